@@ -0,0 +1,26 @@
+// Outcome of Library.borrowBooks / returnBooks. A batch is applied whole or not at all: when any item is
+// refused nothing changes, the refused items say why and the rest say they were held back.
+public class BatchResult {
+    public final int[] bookIds;      // as requested
+    public final String[] messages;  // one per requested id, same order
+    public final boolean applied;
+    public final int totalFine;      // returns only; 0 when not applied
+    public final String summary;     // one line for a dialog or a log
+
+    BatchResult(int[] bookIds, String[] messages, boolean applied, int totalFine, String summary) {
+        this.bookIds = bookIds;
+        this.messages = messages;
+        this.applied = applied;
+        this.totalFine = totalFine;
+        this.summary = summary;
+    }
+
+    // Summary followed by one "#id: message" line per book
+    public String describe() {
+        StringBuilder sb = new StringBuilder(summary);
+        for (int i = 0; i < bookIds.length; i++) {
+            sb.append('\n').append('#').append(bookIds[i]).append(": ").append(messages[i]);
+        }
+        return sb.toString();
+    }
+}
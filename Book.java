@@ -1,14 +1,35 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.time.LocalDate;
 
 public class Book implements Serializable {
+    private static final long serialVersionUID = -2431101918154592118L;
+
     private int bookId;
     private String title;
     private String author;
     private String category;
     private boolean available;
     private String borrowerUsername;   // null if available
-    private String borrowDate;         // YYYY-MM-DD or null
-    private String dueDate;            // YYYY-MM-DD or null
+    private int borrowDay;             // epoch day, NO_DATE if available
+    private int dueDay;                // epoch day, NO_DATE if available
+
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    // serialized form keeps the original ISO date strings, so old state files still load
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("bookId", int.class),
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("author", String.class),
+        new ObjectStreamField("category", String.class),
+        new ObjectStreamField("available", boolean.class),
+        new ObjectStreamField("borrowerUsername", String.class),
+        new ObjectStreamField("borrowDate", String.class),
+        new ObjectStreamField("dueDate", String.class)
+    };
 
     public Book(int bookId, String title, String author, String category) {
         this.bookId = bookId;
@@ -17,8 +38,8 @@ public class Book implements Serializable {
         this.category = category == null ? "General" : category;
         this.available = true;
         this.borrowerUsername = null;
-        this.borrowDate = null;
-        this.dueDate = null;
+        this.borrowDay = NO_DATE;
+        this.dueDay = NO_DATE;
     }
 
     public int getBookId() { return bookId; }
@@ -27,24 +48,100 @@ public class Book implements Serializable {
     public String getCategory() { return category; }
     public boolean isAvailable() { return available; }
     public String getBorrowerUsername() { return borrowerUsername; }
-    public String getBorrowDate() { return borrowDate; }
-    public String getDueDate() { return dueDate; }
+    public int getBorrowDay() { return borrowDay; }
+    public int getDueDay() { return dueDay; }
+    // YYYY-MM-DD or null, for display and export
+    public String getBorrowDate() { return formatDay(getBorrowDay()); }
+    public String getDueDate() { return formatDay(getDueDay()); }
 
     public void setTitle(String title) { this.title = title; }
     public void setAuthor(String author) { this.author = author; }
     public void setCategory(String category) { this.category = category; }
 
-    public void markBorrowed(String username, String date, String dueDate) {
+    // Detached copy for writing a snapshot while the original keeps changing (through the getters, so a
+    // ColumnarCatalog view copies into a plain Book)
+    Book copy() {
+        Book b = new Book(bookId, getTitle(), getAuthor(), getCategory());
+        b.available = isAvailable();
+        b.borrowerUsername = getBorrowerUsername();
+        b.borrowDay = getBorrowDay();
+        b.dueDay = getDueDay();
+        return b;
+    }
+
+    public void markBorrowed(String username, int borrowDay, int dueDay) {
         this.available = false;
         this.borrowerUsername = username;
-        this.borrowDate = date;
-        this.dueDate = dueDate;
+        this.borrowDay = borrowDay;
+        this.dueDay = dueDay;
+    }
+
+    // ISO dates, as found in older saved state and journals
+    public void markBorrowed(String username, String date, String dueDate) {
+        markBorrowed(username, parseDay(date), parseDay(dueDate));
     }
 
     public void markReturned() {
         this.available = true;
         this.borrowerUsername = null;
-        this.borrowDate = null;
-        this.dueDate = null;
+        this.borrowDay = NO_DATE;
+        this.dueDay = NO_DATE;
+    }
+
+    // ---------- Dates ----------
+    // "YYYY-MM-DD" -> epoch day; NO_DATE when missing or malformed
+    static int parseDay(String date) {
+        if (date == null) return NO_DATE;
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (Exception e) {
+            return NO_DATE;
+        }
+    }
+
+    // Small direct-mapped cache: a table repaint asks for the same few dozen dates over and over
+    private static final int FORMAT_SLOTS = 1024; // power of two
+    private static final Object[] formatted = new Object[FORMAT_SLOTS];
+
+    private static class Formatted {
+        final int day;
+        final String text;
+        Formatted(int day, String text) { this.day = day; this.text = text; }
+    }
+
+    static String formatDay(int day) {
+        if (day == NO_DATE) return null;
+        int slot = day & (FORMAT_SLOTS - 1);
+        Formatted f = (Formatted) formatted[slot];
+        if (f == null || f.day != day) {
+            f = new Formatted(day, LocalDate.ofEpochDay(day).toString());
+            formatted[slot] = f; // immutable entry, a racing overwrite is harmless
+        }
+        return f.text;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("bookId", bookId);
+        f.put("title", title);
+        f.put("author", author);
+        f.put("category", category);
+        f.put("available", available);
+        f.put("borrowerUsername", borrowerUsername);
+        f.put("borrowDate", getBorrowDate());
+        f.put("dueDate", getDueDate());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        bookId = f.get("bookId", 0);
+        title = (String) f.get("title", null);
+        author = (String) f.get("author", null);
+        category = (String) f.get("category", null);
+        available = f.get("available", true);
+        borrowerUsername = (String) f.get("borrowerUsername", null);
+        borrowDay = parseDay((String) f.get("borrowDate", null));
+        dueDay = parseDay((String) f.get("dueDate", null));
     }
 }
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+
+// Trigram inverted index behind Library.searchBooks. Postings are sorted id lists per field, so a
+// query walks the shortest posting list among its trigrams and only those candidates are checked
+// with String.contains against pre-lowered field values. Results are exactly the old full-scan results.
+// Authors and categories are dictionary-encoded (one lowered string per distinct value, an int code
+// per book), and each category keeps an exact id set, a bitmap once it is dense, that the category
+// filter either walks or probes per candidate instead of comparing strings.
+public class BookSearchIndex {
+    static final int TITLE = 0, AUTHOR = 1, CATEGORY = 2, ID = 3;
+    private static final int FIELDS = 4;
+    private static final int GRAM = 3;
+
+    private static final int[] ALL_FIELDS = {TITLE, AUTHOR, CATEGORY, ID};
+    private static final int[] TITLE_ONLY = {TITLE};
+    private static final int[] AUTHOR_ONLY = {AUTHOR};
+    private static final int[] CATEGORY_ONLY = {CATEGORY};
+    private static final int[] ID_ONLY = {ID};
+
+    // by book id: lower-cased title (null marks a free id), and codes of the lower-cased author and
+    // category and of the case-folded category used by the filter
+    private String[] titles = new String[16];
+    private int[] authorCode = new int[16];
+    private int[] categoryCode = new int[16];
+    private int[] filterCode = new int[16];
+    private StringDictionary authors = new StringDictionary();
+    private StringDictionary categories = new StringDictionary();
+    private StringDictionary filters = new StringDictionary();
+    private int maxId;
+    private int count;
+
+    private final HashMap<Long, IntList>[] grams;
+    private final ArrayList<CategoryIds> byCategory = new ArrayList<CategoryIds>(); // by filter code
+    private int stale; // postings left behind by removals and edits; verified away, compacted eventually
+
+    @SuppressWarnings("unchecked")
+    public BookSearchIndex() {
+        grams = (HashMap<Long, IntList>[]) new HashMap<?, ?>[FIELDS];
+        for (int f = 0; f < FIELDS; f++) grams[f] = new HashMap<Long, IntList>();
+    }
+
+    // ---------- Maintenance ----------
+    public void add(Book b) {
+        int id = b.getBookId();
+        ensureCapacity(id);
+        if (titles[id] != null) { update(b); return; }
+        if (id > maxId) maxId = id;
+        store(b);
+        count++;
+        post(id);
+    }
+
+    public void update(Book b) {
+        int id = b.getBookId();
+        if (id > maxId || titles[id] == null) { add(b); return; }
+        byCategory.get(filterCode[id]).remove(id);
+        store(b);
+        post(id);
+        stale++;
+        maybeCompact();
+    }
+
+    public void remove(int id) {
+        if (id <= 0 || id > maxId || titles[id] == null) return;
+        byCategory.get(filterCode[id]).remove(id);
+        titles[id] = null;
+        count--;
+        stale++;
+        maybeCompact();
+    }
+
+    private void store(Book b) {
+        int id = b.getBookId();
+        titles[id] = lower(b.getTitle());
+        authorCode[id] = authors.intern(lower(b.getAuthor()));
+        categoryCode[id] = categories.intern(lower(b.getCategory()));
+        filterCode[id] = filters.intern(b.getCategory() == null ? "" : Library.foldCase(b.getCategory()));
+        if (filterCode[id] == byCategory.size()) byCategory.add(new CategoryIds());
+    }
+
+    private static String lower(String s) { return s == null ? "" : s.toLowerCase(); }
+
+    private String field(int f, int id) {
+        switch (f) {
+            case TITLE: return titles[id];
+            case AUTHOR: return authors.value(authorCode[id]);
+            default: return categories.value(categoryCode[id]);
+        }
+    }
+
+    private void post(int id) {
+        for (int f = 0; f <= CATEGORY; f++) postGrams(f, field(f, id), id);
+        postGrams(ID, String.valueOf(id), id);
+        byCategory.get(filterCode[id]).add(id, maxId);
+    }
+
+    private void postGrams(int field, String s, int id) {
+        HashMap<Long, IntList> map = grams[field];
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            Long key = gram(s, i);
+            IntList p = map.get(key);
+            if (p == null) map.put(key, p = new IntList(4));
+            p.addSorted(id);
+        }
+    }
+
+    private void maybeCompact() {
+        if (stale > count + 1024) compact();
+    }
+
+    // Rebuild every posting list and dictionary from the live field values, dropping values no book uses
+    private void compact() {
+        for (int f = 0; f < FIELDS; f++) grams[f].clear();
+        StringDictionary oldAuthors = authors, oldCategories = categories, oldFilters = filters;
+        authors = new StringDictionary();
+        categories = new StringDictionary();
+        filters = new StringDictionary();
+        byCategory.clear();
+        for (int id = 1; id <= maxId; id++) {
+            if (titles[id] == null) continue;
+            authorCode[id] = authors.intern(oldAuthors.value(authorCode[id]));
+            categoryCode[id] = categories.intern(oldCategories.value(categoryCode[id]));
+            filterCode[id] = filters.intern(oldFilters.value(filterCode[id]));
+            if (filterCode[id] == byCategory.size()) byCategory.add(new CategoryIds());
+            post(id);
+        }
+        stale = 0;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < titles.length) return;
+        int n = Math.max(id + 1, titles.length * 2);
+        titles = Arrays.copyOf(titles, n);
+        authorCode = Arrays.copyOf(authorCode, n);
+        categoryCode = Arrays.copyOf(categoryCode, n);
+        filterCode = Arrays.copyOf(filterCode, n);
+    }
+
+    // Exact id set of one category: a sorted list while sparse, a bitmap once that is smaller
+    private static final class CategoryIds {
+        private IntList list = new IntList(4);
+        private BitSet bits;
+        private int size;
+
+        void add(int id, int maxId) {
+            if (bits != null) {
+                if (!bits.get(id)) { bits.set(id); size++; }
+                return;
+            }
+            int before = list.size();
+            list.addSorted(id);
+            size += list.size() - before;
+            if (size >= 64 && size > (maxId >>> 5)) { // 4 bytes per listed id vs 1 bit per possible id
+                bits = new BitSet(maxId + 1);
+                for (int i = 0; i < list.size(); i++) bits.set(list.get(i));
+                list = null;
+            }
+        }
+
+        void remove(int id) {
+            if (bits != null) {
+                if (bits.get(id)) { bits.clear(id); size--; }
+                return;
+            }
+            int before = list.size();
+            list.removeValue(id);
+            size -= before - list.size();
+        }
+
+        boolean contains(int id) {
+            return bits != null ? bits.get(id) : list.contains(id);
+        }
+
+        // Smallest member >= id, or -1
+        int next(int id) {
+            if (bits != null) return bits.nextSetBit(id);
+            int pos = list.lowerBound(id);
+            return pos < list.size() ? list.get(pos) : -1;
+        }
+
+        int size() { return size; }
+    }
+
+    private static Long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // ---------- Queries ----------
+    // Same arguments and semantics as Library.searchBooks; returns matching ids in catalog (id) order
+    public IntList search(String query, String searchBy, String categoryFilter) {
+        return search(query, searchBy, categoryFilter, 1, Integer.MAX_VALUE);
+    }
+
+    // At most limit matching ids that are >= fromId, ascending. Paging with fromId = last id + 1 walks
+    // the same result as one full search. Honors thread interruption with a CancellationException.
+    public IntList search(String query, String searchBy, String categoryFilter, int fromId, int limit) {
+        String q = query == null ? "" : query.trim().toLowerCase();
+        String cat = categoryFilter == null ? "" : categoryFilter.trim().toLowerCase();
+        String catKey = cat.isEmpty() || "All".equalsIgnoreCase(categoryFilter) ? null : Library.foldCase(categoryFilter);
+
+        CategoryIds scope = null; // null = every id
+        if (catKey != null) {
+            int code = filters.code(catKey);
+            scope = code < 0 ? null : byCategory.get(code);
+            if (scope == null || scope.size() == 0) return new IntList(0);
+        }
+        int[] fields = null;
+        if (!q.isEmpty()) {
+            fields = fieldsFor(searchBy);
+            if (fields == null) return new IntList(0);
+        }
+
+        // Driver lists: their union covers every match (the smallest trigram posting of each field);
+        // when the category holds fewer ids than all drivers together, it is walked instead
+        IntList[] drivers = null;
+        if (q.length() >= GRAM) {
+            drivers = new IntList[fields.length];
+            long total = 0;
+            for (int i = 0; i < fields.length; i++) {
+                IntList d = smallestGramList(fields[i], q);
+                drivers[i] = d == null ? EMPTY : d; // null: a trigram of q never occurs in this field
+                total += drivers[i].size();
+            }
+            if (scope != null && scope.size() < total) drivers = null;
+        }
+
+        IntList out = new IntList(Math.min(limit, 1024));
+        int start = Math.max(fromId, 1);
+        int steps = 0;
+        if (drivers == null && scope != null) {
+            for (int id = scope.next(start); id >= 0 && out.size() < limit; id = scope.next(id + 1)) {
+                if ((++steps & 0xFFF) == 0) checkCancelled();
+                if (matches(id, fields, q, null)) out.append(id);
+            }
+            return out;
+        }
+        if (drivers == null) {
+            for (int id = start; id <= maxId && out.size() < limit; id++) {
+                if ((++steps & 0xFFF) == 0) checkCancelled();
+                if (matches(id, fields, q, null)) out.append(id);
+            }
+            return out;
+        }
+        int[] pos = new int[drivers.length];
+        for (int i = 0; i < drivers.length; i++) pos[i] = drivers[i].lowerBound(start);
+        while (out.size() < limit) {
+            if ((++steps & 0xFFF) == 0) checkCancelled();
+            int next = Integer.MAX_VALUE;
+            for (int i = 0; i < drivers.length; i++) {
+                if (pos[i] < drivers[i].size()) next = Math.min(next, drivers[i].get(pos[i]));
+            }
+            if (next == Integer.MAX_VALUE) break;
+            for (int i = 0; i < drivers.length; i++) {
+                if (pos[i] < drivers[i].size() && drivers[i].get(pos[i]) == next) pos[i]++;
+            }
+            if (matches(next, fields, q, scope)) out.append(next);
+        }
+        return out;
+    }
+
+    private static final IntList EMPTY = new IntList(0);
+
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("search cancelled");
+    }
+
+    private static int[] fieldsFor(String searchBy) {
+        if ("Title".equalsIgnoreCase(searchBy)) return TITLE_ONLY;
+        if ("Author".equalsIgnoreCase(searchBy)) return AUTHOR_ONLY;
+        if ("Category".equalsIgnoreCase(searchBy)) return CATEGORY_ONLY;
+        if ("ID".equalsIgnoreCase(searchBy)) return ID_ONLY;
+        if ("All".equalsIgnoreCase(searchBy)) return ALL_FIELDS;
+        return null;
+    }
+
+    // Shortest posting list among the trigrams of q; null if one of them is not indexed at all
+    private IntList smallestGramList(int field, String q) {
+        IntList smallest = null;
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            IntList p = grams[field].get(gram(q, i));
+            if (p == null) return null;
+            if (smallest == null || p.size() < smallest.size()) smallest = p;
+        }
+        return smallest;
+    }
+
+    private boolean matches(int id, int[] fields, String q, CategoryIds scope) {
+        if (id > maxId || titles[id] == null) return false;
+        if (scope != null && !scope.contains(id)) return false;
+        if (fields == null) return true;
+        for (int f : fields) {
+            if (f == ID ? idContains(id, q) : field(f, id).contains(q)) return true;
+        }
+        return false;
+    }
+
+    // String.valueOf(id).contains(q) without building the string
+    static boolean idContains(int id, String q) {
+        int len = q.length();
+        if (len > 10) return false;
+        long v = 0, window = 1;
+        for (int i = 0; i < len; i++) {
+            char c = q.charAt(i);
+            if (c < '0' || c > '9') return false;
+            v = v * 10 + (c - '0');
+            window *= 10;
+        }
+        long minDigits = window / 10; // a suffix needs at least len digits to hold q
+        for (long n = id; n >= minDigits && n > 0; n /= 10) {
+            if (n % window == v) return true;
+        }
+        return id == 0 && len == 1 && v == 0;
+    }
+}
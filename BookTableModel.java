@@ -0,0 +1,89 @@
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Table model that views a search result list directly: cells are read from the Book when painted,
+// so a refresh costs one event and no per-row copies however many rows the result has.
+// Each row's loan state (what the renderer colours) is worked out once per refresh and again only
+// when the date rolls over, so painting is a byte lookup.
+public class BookTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"ID", "Title", "Author", "Category", "Status", "Borrower", "Borrow Date", "Due Date"};
+    public static final byte AVAILABLE = 0, ON_LOAN = 1, NEAR_DUE = 2, OVERDUE = 3;
+    public static final int NEAR_DUE_DAYS = 3;
+
+    private List<Book> books = Collections.emptyList();
+    private ArrayList<Book> owned; // set when books is our own growable list
+    private byte[] states = new byte[0];
+    private int statesDay; // epoch day the states were computed for
+
+    public void setBooks(List<Book> books) {
+        this.books = books == null ? Collections.<Book>emptyList() : books;
+        owned = null;
+        computeStates(0);
+        fireTableDataChanged();
+    }
+
+    // Adds rows at the end (progressive results); the first append after setBooks takes a private copy
+    public void appendBooks(List<Book> more) {
+        if (more.isEmpty()) return;
+        if (books != owned) books = owned = new ArrayList<Book>(books);
+        int first = owned.size();
+        owned.addAll(more);
+        computeStates(first);
+        fireTableRowsInserted(first, owned.size() - 1);
+    }
+
+    public byte getRowState(int row) { return row < states.length ? states[row] : AVAILABLE; }
+
+    // Call periodically: recomputes every row only when today is no longer the day they were computed for
+    public void refreshRowStates() {
+        if ((int) LocalDate.now().toEpochDay() == statesDay || books.isEmpty()) return;
+        computeStates(0);
+        fireTableRowsUpdated(0, books.size() - 1);
+    }
+
+    private void computeStates(int from) {
+        int n = books.size();
+        if (from == 0) {
+            statesDay = (int) LocalDate.now().toEpochDay();
+            if (states.length != n) states = new byte[n];
+        } else if (states.length < n) {
+            states = Arrays.copyOf(states, Math.max(n, states.length * 2));
+        }
+        for (int i = from; i < n; i++) states[i] = stateOf(books.get(i), statesDay);
+    }
+
+    private static byte stateOf(Book b, int today) {
+        if (b.isAvailable()) return AVAILABLE;
+        int due = b.getDueDay();
+        if (due == Book.NO_DATE) return ON_LOAN;
+        if (due < today) return OVERDUE;
+        return due - today <= NEAR_DUE_DAYS ? NEAR_DUE : ON_LOAN;
+    }
+
+    public Book getBookAt(int row) { return books.get(row); }
+
+    public int getRowCount() { return books.size(); }
+    public int getColumnCount() { return COLUMNS.length; }
+    public String getColumnName(int column) { return COLUMNS[column]; }
+    public boolean isCellEditable(int row, int column) { return false; }
+
+    public Object getValueAt(int row, int column) {
+        Book b = books.get(row);
+        switch (column) {
+            case 0: return b.getBookId();
+            case 1: return b.getTitle();
+            case 2: return b.getAuthor();
+            case 3: return b.getCategory();
+            case 4: return b.isAvailable() ? "Available" : "Borrowed";
+            case 5: return b.getBorrowerUsername() == null ? "-" : b.getBorrowerUsername();
+            case 6: return b.getBorrowDate() == null ? "-" : b.getBorrowDate();
+            case 7: return b.getDueDate() == null ? "-" : b.getDueDate();
+            default: return null;
+        }
+    }
+}
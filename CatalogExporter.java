@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Exports the catalog or the active loans as CSV or JSON Lines for downstream systems. The rows are
+// one point-in-time copy (Library.exportSnapshot), so a batch loan is either in the file whole or not
+// at all; they are formatted and encoded into a direct buffer and written through a FileChannel,
+// optionally gzipped on the way, with no lock held, so the desk only waits for the copy. The file is
+// written and forced beside the target, then renamed; a failed export leaves no temp file behind.
+public class CatalogExporter {
+    public enum Format { CSV, JSONL }
+
+    private static final int FLUSH_CHARS = 1 << 15;
+    private static final String[] CATALOG_COLUMNS = {"id", "title", "author", "category", "available", "borrower", "borrowDate", "dueDate"};
+    private static final String[] LOAN_COLUMNS = {"id", "title", "author", "borrower", "borrowDate", "dueDate"};
+
+    private final Library library;
+
+    public CatalogExporter(Library library) {
+        this.library = library;
+    }
+
+    // Format and compression from the file name: *.jsonl / *.json -> JSON Lines, else CSV; *.gz -> gzip
+    public int export(Path target, boolean loansOnly) throws IOException {
+        String name = target.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        Format format = name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSONL : Format.CSV;
+        return export(target, loansOnly, format, gzip);
+    }
+
+    // Returns the number of rows written
+    public int export(Path target, boolean loansOnly, Format format, boolean gzip) throws IOException {
+        String[] columns = loansOnly ? LOAN_COLUMNS : CATALOG_COLUMNS;
+        List<Book> books = library.exportSnapshot(loansOnly);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean done = false;
+        try {
+            try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                GZIPOutputStream gz = gzip ? new GZIPOutputStream(Channels.newOutputStream(file), 1 << 16) : null;
+                Sink sink = new Sink(gz != null ? Channels.newChannel(gz) : file);
+                if (format == Format.CSV) {
+                    for (int i = 0; i < columns.length; i++) sink.append(i == 0 ? "" : ",").append(columns[i]);
+                    sink.append("\n");
+                }
+                for (Book b : books) {
+                    if (format == Format.CSV) csvRow(sink, b, loansOnly);
+                    else jsonRow(sink, b, loansOnly, columns);
+                    sink.maybeFlush();
+                }
+                sink.finish();
+                if (gz != null) gz.finish(); // gzip trailer, straight into the file channel
+                file.force(false);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        } finally {
+            if (!done) Files.deleteIfExists(tmp);
+        }
+        return books.size();
+    }
+
+    // ---------- Rows ----------
+    private static void csvRow(Sink s, Book b, boolean loansOnly) {
+        s.append(Integer.toString(b.getBookId()));
+        csv(s.append(","), b.getTitle());
+        csv(s.append(","), b.getAuthor());
+        if (!loansOnly) {
+            csv(s.append(","), b.getCategory());
+            s.append(b.isAvailable() ? ",true" : ",false");
+        }
+        csv(s.append(","), b.getBorrowerUsername());
+        csv(s.append(","), b.getBorrowDate());
+        csv(s.append(","), b.getDueDate());
+        s.append("\n");
+    }
+
+    // Quoted only when needed, same rules CatalogImporter reads back
+    private static void csv(Sink s, String v) {
+        if (v == null) return;
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) { s.append(v); return; }
+        s.append("\"");
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '"') s.append("\"\"");
+            else s.append(c);
+        }
+        s.append("\"");
+    }
+
+    private static void jsonRow(Sink s, Book b, boolean loansOnly, String[] columns) {
+        s.append("{\"").append(columns[0]).append("\":").append(Integer.toString(b.getBookId()));
+        json(s, "title", b.getTitle());
+        json(s, "author", b.getAuthor());
+        if (!loansOnly) {
+            json(s, "category", b.getCategory());
+            s.append(",\"available\":").append(b.isAvailable() ? "true" : "false");
+        }
+        json(s, "borrower", b.getBorrowerUsername());
+        json(s, "borrowDate", b.getBorrowDate());
+        json(s, "dueDate", b.getDueDate());
+        s.append("}\n");
+    }
+
+    private static void json(Sink s, String key, String v) {
+        s.append(",\"").append(key).append("\":");
+        if (v == null) { s.append("null"); return; }
+        s.append("\"");
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"': s.append("\\\""); break;
+                case '\\': s.append("\\\\"); break;
+                case '\n': s.append("\\n"); break;
+                case '\r': s.append("\\r"); break;
+                case '\t': s.append("\\t"); break;
+                default:
+                    if (c < 0x20) s.append(String.format("\\u%04x", (int) c));
+                    else s.append(c);
+            }
+        }
+        s.append("\"");
+    }
+
+    // ---------- Output ----------
+    // Characters collect in a reused builder and are UTF-8 encoded into one direct buffer in chunks
+    private static class Sink {
+        private final WritableByteChannel out;
+        private final StringBuilder chars = new StringBuilder(FLUSH_CHARS + 1024);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 20);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        Sink(WritableByteChannel out) { this.out = out; }
+
+        Sink append(String s) { chars.append(s); return this; }
+        Sink append(char c) { chars.append(c); return this; }
+
+        void maybeFlush() throws IOException {
+            if (chars.length() >= FLUSH_CHARS) encode(false);
+        }
+
+        void finish() throws IOException {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) drain();
+            drain();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars);
+            while (true) {
+                CoderResult r = encoder.encode(in, bytes, endOfInput);
+                if (r.isOverflow()) drain();
+                else if (r.isUnderflow()) break;
+                else r.throwException();
+            }
+            // a trailing high surrogate waits for its pair in the next chunk
+            String rest = in.toString();
+            chars.setLength(0);
+            chars.append(rest);
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) out.write(bytes);
+            bytes.clear();
+        }
+    }
+}
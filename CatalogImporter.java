@@ -0,0 +1,289 @@
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Bulk catalog import from CSV or TSV (title, author, optional category; a header row naming those
+// columns is recognized). The file is streamed: this thread cuts it into batches of records, a
+// worker pool parses and validates batches in parallel, and batches are committed in file order,
+// which dedupes them (case-insensitive title + author, also against the existing catalog) and
+// builds the books with ids reserved in blocks. At most a few batches are in memory at once.
+// The finished books become visible in one step, once the checkpoint holding them is on disk
+// (Library.importBooks); if it cannot be written the import fails and nothing is added.
+public class CatalogImporter {
+    public static final int MAX_FIELD_LENGTH = 1000;
+    private static final int BATCH_RECORDS = 8192;
+
+    public interface ProgressListener {
+        void progress(Result soFar);
+    }
+
+    public static class Result {
+        public long rowsRead;
+        public long imported;
+        public long invalid;
+        public long duplicates;
+        public long bytesRead;
+        public long totalBytes;
+        public long elapsedNanos;
+        public boolean cancelled;
+
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+        }
+
+        Result copy() {
+            Result r = new Result();
+            r.rowsRead = rowsRead; r.imported = imported; r.invalid = invalid; r.duplicates = duplicates;
+            r.bytesRead = bytesRead; r.totalBytes = totalBytes; r.elapsedNanos = elapsedNanos; r.cancelled = cancelled;
+            return r;
+        }
+
+        public String toString() {
+            return String.format("%d rows read, %d imported, %d duplicates, %d invalid (%.0f rows/sec)%s",
+                rowsRead, imported, duplicates, invalid, rowsPerSecond(), cancelled ? " - cancelled" : "");
+        }
+    }
+
+    private final Library library;
+    private final int workers;
+    private volatile boolean cancelled;
+
+    public CatalogImporter(Library library) {
+        this(library, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CatalogImporter(Library library, int workers) {
+        this.library = library;
+        this.workers = Math.max(1, workers);
+    }
+
+    // Stops at the next batch boundary; nothing is committed
+    public void cancel() { cancelled = true; }
+
+    public Result importFile(Path file, ProgressListener listener) throws IOException {
+        char delimiter = file.getFileName().toString().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        Result result = new Result();
+        result.totalBytes = Files.size(file);
+        long start = System.nanoTime();
+
+        HashSet<String> seen = new HashSet<String>();
+        Iterator<Book> existing = library.searchIterator("", "All", "All");
+        while (existing.hasNext()) {
+            Book b = existing.next();
+            seen.add(key(b.getTitle(), b.getAuthor()));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayDeque<Future<ParsedBatch>> inFlight = new ArrayDeque<Future<ParsedBatch>>();
+        ArrayList<Book> accepted = new ArrayList<Book>();
+        CountingInputStream bytes = new CountingInputStream(Files.newInputStream(file));
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(bytes, StandardCharsets.UTF_8.newDecoder()))) {
+            int[] columns = null;
+            ArrayList<String> records = new ArrayList<String>(BATCH_RECORDS);
+            String record;
+            while (!cancelled && (record = nextRecord(in, result)) != null) {
+                result.bytesRead = bytes.count; // as far as the reader has decoded, a buffer ahead at most
+                if (columns == null) {
+                    columns = headerColumns(parseFields(record, delimiter));
+                    if (columns != null) { result.rowsRead--; continue; } // it was a header row
+                    columns = new int[] {0, 1, 2};
+                }
+                records.add(record);
+                if (records.size() == BATCH_RECORDS) {
+                    inFlight.add(pool.submit(new ParseTask(records, delimiter, columns)));
+                    records = new ArrayList<String>(BATCH_RECORDS);
+                    if (inFlight.size() >= 2 * workers) commit(inFlight.poll(), seen, accepted, result, start, listener);
+                }
+            }
+            if (!records.isEmpty() && !cancelled) inFlight.add(pool.submit(new ParseTask(records, delimiter, columns == null ? new int[] {0, 1, 2} : columns)));
+            while (!inFlight.isEmpty() && !cancelled) commit(inFlight.poll(), seen, accepted, result, start, listener);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        result.bytesRead = bytes.count;
+        result.cancelled = cancelled;
+        if (!cancelled && !accepted.isEmpty()) library.importBooks(accepted);
+        else result.imported = 0;
+        result.elapsedNanos = System.nanoTime() - start;
+        if (listener != null) listener.progress(result.copy());
+        return result;
+    }
+
+    // In file order: drop duplicates, then give the survivors a block of fresh ids
+    private void commit(Future<ParsedBatch> future, HashSet<String> seen, ArrayList<Book> accepted, Result result, long start, ProgressListener listener) throws IOException {
+        ParsedBatch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+        result.invalid += batch.invalid;
+        ArrayList<String[]> fresh = new ArrayList<String[]>(batch.rows.size());
+        for (String[] row : batch.rows) {
+            if (seen.add(key(row[0], row[1]))) fresh.add(row);
+            else result.duplicates++;
+        }
+        int id = fresh.isEmpty() ? 0 : library.reserveBookIds(fresh.size());
+        for (String[] row : fresh) accepted.add(new Book(id++, row[0], row[1], row[2]));
+        result.imported += fresh.size();
+        result.elapsedNanos = System.nanoTime() - start;
+        if (listener != null) listener.progress(result.copy());
+    }
+
+    private static String key(String title, String author) {
+        return Library.foldCase(title) + '\u0001' + Library.foldCase(author);
+    }
+
+    // ---------- Record splitting and parsing ----------
+    // One logical record; a quoted field may span lines
+    private static String nextRecord(BufferedReader in, Result result) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) return null;
+        } while (line.trim().isEmpty());
+        if (!openQuote(line, false)) {
+            result.rowsRead++;
+            return line;
+        }
+        StringBuilder sb = new StringBuilder(line);
+        boolean open = true;
+        String more;
+        while (open && (more = in.readLine()) != null) {
+            sb.append('\n').append(more);
+            open = openQuote(more, true);
+        }
+        result.rowsRead++;
+        return sb.toString();
+    }
+
+    // Bytes taken from the file, for progress against Result.totalBytes whatever the encoding
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    // Whether a quoted field is still open at the end of this line
+    private static boolean openQuote(String line, boolean startsOpen) {
+        boolean open = startsOpen;
+        for (int i = 0; i < line.length(); i++) if (line.charAt(i) == '"') open = !open;
+        return open;
+    }
+
+    // RFC 4180 style: fields may be quoted, "" inside quotes is a literal quote
+    static List<String> parseFields(String record, char delimiter) {
+        ArrayList<String> fields = new ArrayList<String>(4);
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') { sb.append('"'); i++; }
+                    else quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    // Column positions of title, author, category (-1 if absent) when this is a header row, else null
+    private static int[] headerColumns(List<String> fields) {
+        int[] cols = {-1, -1, -1};
+        for (int i = 0; i < fields.size(); i++) {
+            String f = fields.get(i).trim();
+            if (f.equalsIgnoreCase("title")) cols[0] = i;
+            else if (f.equalsIgnoreCase("author")) cols[1] = i;
+            else if (f.equalsIgnoreCase("category")) cols[2] = i;
+        }
+        return cols[0] >= 0 && cols[1] >= 0 ? cols : null;
+    }
+
+    private static class ParsedBatch {
+        final ArrayList<String[]> rows = new ArrayList<String[]>();
+        int invalid;
+    }
+
+    private static class ParseTask implements java.util.concurrent.Callable<ParsedBatch> {
+        private final List<String> records;
+        private final char delimiter;
+        private final int[] columns;
+
+        ParseTask(List<String> records, char delimiter, int[] columns) {
+            this.records = records;
+            this.delimiter = delimiter;
+            this.columns = columns;
+        }
+
+        public ParsedBatch call() {
+            ParsedBatch out = new ParsedBatch();
+            for (String record : records) {
+                List<String> f = parseFields(record, delimiter);
+                String title = field(f, columns[0]);
+                String author = field(f, columns[1]);
+                String category = field(f, columns[2]);
+                if (title.isEmpty() || author.isEmpty() || title.length() > MAX_FIELD_LENGTH
+                    || author.length() > MAX_FIELD_LENGTH || category.length() > MAX_FIELD_LENGTH) {
+                    out.invalid++;
+                    continue;
+                }
+                out.rows.add(new String[] {title, author, category.isEmpty() ? "General" : category});
+            }
+            return out;
+        }
+
+        private static String field(List<String> f, int col) {
+            return col >= 0 && col < f.size() ? f.get(col).trim() : "";
+        }
+    }
+}
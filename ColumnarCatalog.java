@@ -0,0 +1,442 @@
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Struct-of-arrays catalog for very large collections (-Dlibrary.store=columnar), used by Library in
+// place of its id -> Book map. Rows are indexed by book id: state, loan days and dictionary codes sit
+// in primitive arrays and titles in one packed UTF-8 byte array, under 30 bytes per book plus its
+// title instead of a Book, its Strings, a boxed key and a map entry. get() hands out a Book view that
+// reads and writes the row, so existing callers keep working; iteration is in id order.
+//
+// Same locking as the map it replaces: rows are added, removed and edited under Library's write lock,
+// loan state changes under the read lock plus the book's loan stripe. Views read without any lock, so
+// every array they read (the columns, the title storage and the author / category names) hangs off
+// one immutable Columns holder, replaced in a single volatile write whenever anything is grown or
+// repacked: a reader takes the holder once per call and never pairs arrays of different generations.
+public class ColumnarCatalog extends AbstractMap<Integer, Book> {
+    private static final byte FREE = 0, AVAILABLE = 1, ON_LOAN = 2;
+    private static final int COMPACT_MIN_GARBAGE = 1 << 20; // bytes of dead titles before repacking
+    private static final int MAX_TITLE_BYTES = 0xFFFF;       // fits the 2-byte length prefix
+
+    private volatile Columns columns;
+    private int titleEnd;
+    private int garbage; // title bytes no row points at any more
+
+    // the full dictionaries; Columns carries their values by code for the views. authors and
+    // categories are written under the write lock and also under their own monitor, so a view that
+    // misses in its names falls back to them; borrowers is written under a loan stripe only, so it is
+    // guarded by itself throughout
+    private StringDictionary authors;
+    private StringDictionary categories;
+    private StringDictionary borrowers;
+    private int size;
+    private int maxId;
+
+    public ColumnarCatalog(int expectedBooks) {
+        int n = Math.max(16, expectedBooks + 1);
+        columns = Columns.empty(n, new byte[Math.max(1024, n * 32)]);
+        authors = new StringDictionary();
+        categories = new StringDictionary();
+        borrowers = new StringDictionary();
+    }
+
+    private ColumnarCatalog() { }
+
+    // Point-in-time copy of every column, for writing a snapshot without the lock and without a
+    // Book object per row
+    public ColumnarCatalog copy() {
+        ColumnarCatalog c = new ColumnarCatalog();
+        Columns k = columns;
+        int n = maxId + 1;
+        c.columns = new Columns(Arrays.copyOf(k.state, n), Arrays.copyOf(k.borrowDay, n), Arrays.copyOf(k.dueDay, n),
+            Arrays.copyOf(k.authorCode, n), Arrays.copyOf(k.categoryCode, n), Arrays.copyOf(k.borrowerCode, n),
+            offsets(k.titleAt, n), Arrays.copyOf(k.titleBytes, titleEnd), k.authorNames.clone(), k.categoryNames.clone());
+        c.titleEnd = titleEnd;
+        synchronized (authors) { c.authors = authors.copy(); }
+        synchronized (categories) { c.categories = categories.copy(); }
+        synchronized (borrowers) { c.borrowers = borrowers.copy(); }
+        c.size = size;
+        c.maxId = maxId;
+        return c;
+    }
+
+    // ---------- Map ----------
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && live((Integer) key);
+    }
+
+    @Override
+    public Book get(Object key) {
+        if (!(key instanceof Integer)) return null;
+        int id = (Integer) key;
+        return live(id) ? new View(id) : null;
+    }
+
+    // Copies b into row id; returns a detached copy of the book it replaces, or null
+    @Override
+    public Book put(Integer key, Book b) {
+        int id = key;
+        if (id <= 0) throw new IllegalArgumentException("Book ids start at 1: " + id);
+        ensureCapacity(id);
+        Book previous = live(id) ? new View(id).copy() : null;
+        storeTitle(id, b.getTitle());
+        if (previous == null) size++;
+        int author = internAuthor(b.getAuthor());
+        int category = internCategory(b.getCategory());
+        columns.authorCode[id] = author;
+        columns.categoryCode[id] = category;
+        if (b.isAvailable()) setReturned(id);
+        else setBorrowed(id, b.getBorrowerUsername(), b.getBorrowDay(), b.getDueDay());
+        if (id > maxId) maxId = id;
+        return previous;
+    }
+
+    // The row stays readable until its id is stored again, so views held elsewhere still show the book
+    @Override
+    public Book remove(Object key) {
+        if (!(key instanceof Integer) || !live((Integer) key)) return null;
+        int id = (Integer) key;
+        Book previous = new View(id).copy();
+        columns.state[id] = FREE;
+        size--;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        columns = Columns.empty(columns.state.length, new byte[1024]);
+        titleEnd = 0;
+        garbage = 0;
+        size = 0;
+        maxId = 0;
+    }
+
+    @Override
+    public Collection<Book> values() {
+        return new AbstractCollection<Book>() {
+            public int size() { return size; }
+            public Iterator<Book> iterator() {
+                return new RowIterator<Book>() {
+                    Book make(int id) { return new View(id); }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, Book>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, Book>>() {
+            public int size() { return size; }
+            public Iterator<Map.Entry<Integer, Book>> iterator() {
+                return new RowIterator<Map.Entry<Integer, Book>>() {
+                    Map.Entry<Integer, Book> make(int id) {
+                        return new AbstractMap.SimpleImmutableEntry<Integer, Book>(id, new View(id));
+                    }
+                };
+            }
+        };
+    }
+
+    // Live rows in id order
+    private abstract class RowIterator<T> implements Iterator<T> {
+        private int next = advance(1);
+
+        private int advance(int from) {
+            while (from <= maxId && !live(from)) from++;
+            return from;
+        }
+
+        abstract T make(int id);
+
+        public boolean hasNext() { return next <= maxId; }
+
+        public T next() {
+            if (next > maxId) throw new NoSuchElementException();
+            int id = next;
+            next = advance(id + 1);
+            return make(id);
+        }
+    }
+
+    // ---------- Rows ----------
+    // One generation of storage. The array references never change; the writer fills in elements
+    // (rows, loan fields, new names, title bytes past titleEnd) and swaps in a new holder whenever an
+    // array has to be replaced.
+    private static final class Columns {
+        // by book id
+        final byte[] state;
+        final int[] borrowDay;
+        final int[] dueDay;
+        final int[] authorCode;
+        final int[] categoryCode;
+        final int[] borrowerCode;
+        final AtomicIntegerArray titleAt; // offset in titleBytes, -1 for no title
+        // per title: a 2-byte length, then its UTF-8; titleAt only ever points into this same array
+        final byte[] titleBytes;
+        // dictionary values by code, filled in before any row carries the code
+        final String[] authorNames;
+        final String[] categoryNames;
+
+        Columns(byte[] state, int[] borrowDay, int[] dueDay, int[] authorCode, int[] categoryCode, int[] borrowerCode,
+                AtomicIntegerArray titleAt, byte[] titleBytes, String[] authorNames, String[] categoryNames) {
+            this.state = state;
+            this.borrowDay = borrowDay;
+            this.dueDay = dueDay;
+            this.authorCode = authorCode;
+            this.categoryCode = categoryCode;
+            this.borrowerCode = borrowerCode;
+            this.titleAt = titleAt;
+            this.titleBytes = titleBytes;
+            this.authorNames = authorNames;
+            this.categoryNames = categoryNames;
+        }
+
+        static Columns empty(int rows, byte[] titleBytes) {
+            return new Columns(new byte[rows], new int[rows], new int[rows], new int[rows], new int[rows], new int[rows],
+                offsets(null, rows), titleBytes, new String[16], new String[16]);
+        }
+
+        Columns withRows(int n) {
+            return new Columns(Arrays.copyOf(state, n), Arrays.copyOf(borrowDay, n), Arrays.copyOf(dueDay, n),
+                Arrays.copyOf(authorCode, n), Arrays.copyOf(categoryCode, n), Arrays.copyOf(borrowerCode, n),
+                offsets(titleAt, n), titleBytes, authorNames, categoryNames);
+        }
+
+        Columns withTitles(AtomicIntegerArray at, byte[] bytes) {
+            return new Columns(state, borrowDay, dueDay, authorCode, categoryCode, borrowerCode, at, bytes, authorNames, categoryNames);
+        }
+
+        Columns withNames(String[] authors, String[] categories) {
+            return new Columns(state, borrowDay, dueDay, authorCode, categoryCode, borrowerCode, titleAt, titleBytes, authors, categories);
+        }
+
+        int titleLength(int offset) {
+            return ((titleBytes[offset] & 0xFF) << 8) | (titleBytes[offset + 1] & 0xFF);
+        }
+    }
+
+    // id is within the arrays of c (a row the caller saw in an older holder is in every later one)
+    private static boolean live(Columns c, int id) {
+        return id > 0 && id < c.state.length && c.state[id] != FREE;
+    }
+
+    private boolean live(int id) {
+        return id <= maxId && live(columns, id);
+    }
+
+    // Caller holds the write lock
+    private void ensureCapacity(int id) {
+        Columns c = columns;
+        if (id < c.state.length) return;
+        columns = c.withRows(Math.max(id + 1, c.state.length + (c.state.length >> 1)));
+    }
+
+    // Offsets for n rows, copied from old where it has them, -1 elsewhere
+    private static AtomicIntegerArray offsets(AtomicIntegerArray old, int n) {
+        AtomicIntegerArray at = new AtomicIntegerArray(n);
+        int copied = old == null ? 0 : Math.min(n, old.length());
+        for (int id = 0; id < copied; id++) at.lazySet(id, old.get(id));
+        for (int id = copied; id < n; id++) at.lazySet(id, -1);
+        return at;
+    }
+
+    // ---------- Titles ----------
+    // Only the writer (under Library's write lock) touches bytes past titleEnd, and a row's offset is
+    // set after its bytes, so a reader never follows an offset to bytes not yet written
+    private String title(int id) {
+        Columns c = columns;
+        int offset = c.titleAt.get(id);
+        return offset < 0 ? null : new String(c.titleBytes, offset + 2, c.titleLength(offset), StandardCharsets.UTF_8);
+    }
+
+    private void storeTitle(int id, String title) {
+        Columns c = columns;
+        int old = c.titleAt.get(id);
+        byte[] utf8 = title == null ? null : title.getBytes(StandardCharsets.UTF_8);
+        if (utf8 != null && utf8.length > MAX_TITLE_BYTES) {
+            throw new IllegalArgumentException("Title too long (" + utf8.length + " bytes of UTF-8)");
+        }
+        if (old >= 0) garbage += 2 + c.titleLength(old);
+        if (utf8 == null) {
+            c.titleAt.set(id, -1);
+            return;
+        }
+        if (garbage > COMPACT_MIN_GARBAGE && garbage > titleEnd / 2) c = compactTitles(c);
+        int end = titleEnd + 2 + utf8.length;
+        if (end > c.titleBytes.length) {
+            long n = Math.max((long) end, c.titleBytes.length + ((long) c.titleBytes.length >> 1));
+            if (n > Integer.MAX_VALUE - 8) throw new IllegalStateException("Title storage is full");
+            c = c.withTitles(offsets(c.titleAt, c.titleAt.length()), Arrays.copyOf(c.titleBytes, (int) n));
+            columns = c;
+        }
+        c.titleBytes[titleEnd] = (byte) (utf8.length >>> 8);
+        c.titleBytes[titleEnd + 1] = (byte) utf8.length;
+        System.arraycopy(utf8, 0, c.titleBytes, titleEnd + 2, utf8.length);
+        c.titleAt.set(id, titleEnd);
+        titleEnd = end;
+    }
+
+    // Repacks the titles still referenced (removed rows keep theirs) into a new holder and publishes it
+    private Columns compactTitles(Columns c) {
+        byte[] packed = new byte[Math.max(1024, titleEnd - garbage + (titleEnd >> 3))];
+        AtomicIntegerArray at = offsets(null, c.titleAt.length());
+        int end = 0;
+        for (int id = 1; id <= maxId; id++) {
+            int offset = c.titleAt.get(id);
+            if (offset < 0) continue;
+            int len = 2 + c.titleLength(offset);
+            System.arraycopy(c.titleBytes, offset, packed, end, len);
+            at.lazySet(id, end);
+            end += len;
+        }
+        Columns compacted = c.withTitles(at, packed);
+        columns = compacted;
+        titleEnd = end;
+        garbage = 0;
+        return compacted;
+    }
+
+    // ---------- Names ----------
+    // Caller holds the write lock. The name is in the current holder before the code is returned, so
+    // the row that stores the code points at a filled-in slot.
+    private int internAuthor(String author) {
+        int code;
+        synchronized (authors) { code = authors.intern(author); }
+        if (code >= 0) addName(code, author, true);
+        return code;
+    }
+
+    private int internCategory(String category) {
+        int code;
+        synchronized (categories) { code = categories.intern(category); }
+        if (code >= 0) addName(code, category, false);
+        return code;
+    }
+
+    private void addName(int code, String value, boolean author) {
+        Columns c = columns;
+        String[] names = author ? c.authorNames : c.categoryNames;
+        if (code < names.length && names[code] != null) return;
+        if (code >= names.length) {
+            names = Arrays.copyOf(names, Math.max(code + 1, names.length * 2));
+            names[code] = value;
+            columns = author ? c.withNames(names, c.categoryNames) : c.withNames(c.authorNames, names);
+        } else {
+            names[code] = value;
+        }
+    }
+
+    // The holder's names first; a code newer than them (the view raced the writer) is looked up in
+    // the dictionary itself, under its monitor
+    private static String name(String[] names, StringDictionary d, int code) {
+        if (code < 0) return null;
+        String v = code < names.length ? names[code] : null;
+        if (v != null) return v;
+        synchronized (d) { return d.value(code); }
+    }
+
+    // ---------- Loans ----------
+    private void setBorrowed(int id, String username, int borrowed, int due) {
+        int code;
+        synchronized (borrowers) { code = borrowers.intern(username); }
+        Columns c = columns;
+        c.borrowerCode[id] = code;
+        c.borrowDay[id] = borrowed;
+        c.dueDay[id] = due;
+        c.state[id] = ON_LOAN;
+    }
+
+    private void setReturned(int id) {
+        Columns c = columns;
+        c.borrowerCode[id] = -1;
+        c.borrowDay[id] = Book.NO_DATE;
+        c.dueDay[id] = Book.NO_DATE;
+        c.state[id] = AVAILABLE;
+    }
+
+    private String borrower(int code) {
+        if (code < 0) return null;
+        synchronized (borrowers) { return borrowers.value(code); }
+    }
+
+    // ---------- Book facade ----------
+    // A window onto one row; holds no book data itself. Serializes as a plain Book.
+    private final class View extends Book {
+        private static final long serialVersionUID = 1L;
+
+        View(int id) { super(id, null, null, null); }
+
+        private int row() { return getBookId(); }
+
+        @Override public String getTitle() { return title(row()); }
+
+        @Override
+        public String getAuthor() {
+            Columns c = columns;
+            return name(c.authorNames, authors, c.authorCode[row()]);
+        }
+
+        @Override
+        public String getCategory() {
+            Columns c = columns;
+            return name(c.categoryNames, categories, c.categoryCode[row()]);
+        }
+
+        @Override public boolean isAvailable() { return columns.state[row()] != ON_LOAN; }
+
+        @Override
+        public String getBorrowerUsername() {
+            Columns c = columns;
+            return c.state[row()] == ON_LOAN ? borrower(c.borrowerCode[row()]) : null;
+        }
+
+        @Override
+        public int getBorrowDay() {
+            Columns c = columns;
+            return c.state[row()] == ON_LOAN ? c.borrowDay[row()] : Book.NO_DATE;
+        }
+
+        @Override
+        public int getDueDay() {
+            Columns c = columns;
+            return c.state[row()] == ON_LOAN ? c.dueDay[row()] : Book.NO_DATE;
+        }
+
+        // setters: caller holds Library's write lock
+        @Override public void setTitle(String title) { storeTitle(row(), title); }
+        @Override public void setAuthor(String author) { int code = internAuthor(author); columns.authorCode[row()] = code; }
+        @Override public void setCategory(String category) { int code = internCategory(category); columns.categoryCode[row()] = code; }
+
+        @Override
+        public void markBorrowed(String username, int borrowDay, int dueDay) {
+            setBorrowed(row(), username, borrowDay, dueDay);
+        }
+
+        @Override
+        public void markReturned() { setReturned(row()); }
+
+        private Object writeReplace() { return copy(); }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof View && ((View) o).row() == row() && ((View) o).catalog() == ColumnarCatalog.this;
+        }
+
+        @Override
+        public int hashCode() { return row(); }
+
+        private ColumnarCatalog catalog() { return ColumnarCatalog.this; }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Active loans ordered by due date: one (dueDay, bookId) key per loan. Library keeps it in step with
+// every borrow and return, so "overdue" or "due in the next n days" reads only the keys in that range
+// instead of scanning the catalog. Loans without a due date are not indexed.
+//
+// The keys live in a concurrent skip list, so borrows and returns on different books add and remove
+// without a shared monitor; Library's per-book stripe orders the updates for any one loan. Range reads
+// are weakly consistent: a loan added or removed while one runs may or may not be seen.
+public class DueDateIndex {
+    private final ConcurrentSkipListSet<Long> loans = new ConcurrentSkipListSet<Long>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Due day in the high half, so keys sort by due date and then by id (book ids are positive)
+    private static long key(int dueDay, int bookId) {
+        return ((long) dueDay << 32) | (bookId & 0xFFFFFFFFL);
+    }
+
+    private static int dueDay(long key) { return (int) (key >> 32); }
+
+    private static int bookId(long key) { return (int) key; }
+
+    public void add(int bookId, int dueDay) {
+        if (loans.add(key(dueDay, bookId))) size.incrementAndGet();
+    }
+
+    public void remove(int bookId, int dueDay) {
+        if (loans.remove(key(dueDay, bookId))) size.decrementAndGet();
+    }
+
+    // Book ids due from fromDay to toDay (both inclusive), earliest due date first, then by id
+    public int[] dueBetween(int fromDay, int toDay) {
+        if (fromDay > toDay) return new int[0];
+        IntList ids = new IntList(64);
+        for (Long k : range(fromDay, toDay)) ids.append(bookId(k));
+        int[] out = new int[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        return out;
+    }
+
+    public int countBetween(int fromDay, int toDay) {
+        if (fromDay > toDay) return 0;
+        int n = 0;
+        for (Long k : range(fromDay, toDay)) n++;
+        return n;
+    }
+
+    private NavigableSet<Long> range(int fromDay, int toDay) {
+        return loans.subSet(key(fromDay, 0), true, key(toDay, -1), true);
+    }
+
+    public int size() { return size.get(); }
+
+    // Earliest due date among active loans, or Integer.MAX_VALUE when nothing is out
+    public int earliestDay() {
+        Long first = loans.ceiling(Long.MIN_VALUE);
+        return first == null ? Integer.MAX_VALUE : dueDay(first);
+    }
+
+    // Only while no loans are being added or removed
+    public void clear() {
+        loans.clear();
+        size.set(0);
+    }
+}
@@ -0,0 +1,106 @@
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Nightly fine accrual: Library.accrueFines copies the overdue loans from the due-date index, walks
+// them in parallel (fork/join over the id-sorted loans) and publishes a new FineLedger. This class runs it
+// once at start and then shortly after each local midnight, and tells the listener.
+public class FineAccrual {
+    static final int LEAF_LOANS = 4096; // loans per fork/join leaf
+
+    public interface Listener {
+        void accrued(FineLedger ledger);
+    }
+
+    private final Library library;
+    private final Listener listener; // may be null
+    private ScheduledExecutorService timer;
+
+    public FineAccrual(Library library, Listener listener) {
+        this.library = library;
+        this.listener = listener;
+    }
+
+    public FineLedger runNow() {
+        FineLedger ledger = library.accrueFines(LocalDate.now());
+        if (listener != null) {
+            try {
+                listener.accrued(ledger);
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // a failing listener must not stop later runs
+            }
+        }
+        return ledger;
+    }
+
+    // First run right away, then every day a minute after midnight, on a daemon thread
+    public synchronized void start() {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "library-fines");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Runnable run = new Runnable() {
+            public void run() {
+                try {
+                    runNow();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        timer.execute(run);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().plusDays(1).atStartOfDay().plusMinutes(1);
+        timer.scheduleAtFixedRate(run, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) timer.shutdownNow();
+        timer = null;
+    }
+
+    // ---------- Engine ----------
+    // Caller (Library.accrueFines) holds no lock; each leaf takes the read lock for its own loans
+    static void accrue(Library library, FineLedger ledger, int[] sortedIds, int asOfDay) {
+        ForkJoinPool.commonPool().invoke(new AccrualTask(library, ledger, sortedIds, 0, sortedIds.length, asOfDay));
+    }
+
+    private static final class AccrualTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Library library;
+        private final FineLedger ledger;
+        private final int[] ids;
+        private final int from, to;
+        private final int day;
+
+        AccrualTask(Library library, FineLedger ledger, int[] ids, int from, int to, int day) {
+            this.library = library;
+            this.ledger = ledger;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.day = day;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_LOANS) {
+                library.accrueLoans(ledger, ids, from, to, day);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new AccrualTask(library, ledger, ids, from, mid, day),
+                      new AccrualTask(library, ledger, ids, mid, to, day));
+        }
+    }
+}
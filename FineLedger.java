@@ -0,0 +1,96 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fines accrued on overdue loans as of one date, built by a FineAccrual run. Per loan: parallel int
+// arrays sorted by book id (8 bytes per overdue loan); per user: a running balance keyed by the
+// case-folded username, so balance() is one hash lookup. Returning a book closes its entry, so the
+// balances stay current until the next run replaces the ledger.
+public class FineLedger {
+    private final LocalDate asOf;
+    private final int[] bookIds;   // overdue loans considered by the run, ascending
+    private final int[] fines;     // accrued fine per loan; 0 when none or once returned
+    private final ConcurrentHashMap<String, AtomicLong> balances = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicInteger openLoans = new AtomicInteger();
+    private volatile long elapsedNanos;
+
+    FineLedger(LocalDate asOf, int[] sortedBookIds) {
+        this.asOf = asOf;
+        this.bookIds = sortedBookIds;
+        this.fines = new int[sortedBookIds.length];
+    }
+
+    // ---------- Updates (from the accrual engine and from returns) ----------
+    // Once per position, by the run that owns this ledger; caller holds the book's loan stripe
+    void accrue(int pos, String borrower, int fine) {
+        if (fine <= 0 || borrower == null) return;
+        fines[pos] = fine;
+        balanceOf(borrower).addAndGet(fine);
+        total.addAndGet(fine);
+        openLoans.incrementAndGet();
+    }
+
+    // The loan of bookId ended; caller holds the book's loan stripe, so this cannot race accrue()
+    void loanClosed(int bookId, String borrower) {
+        int pos = Arrays.binarySearch(bookIds, bookId);
+        if (pos < 0 || fines[pos] == 0 || borrower == null) return;
+        int fine = fines[pos];
+        fines[pos] = 0;
+        balanceOf(borrower).addAndGet(-fine);
+        total.addAndGet(-fine);
+        openLoans.decrementAndGet();
+    }
+
+    private AtomicLong balanceOf(String borrower) {
+        String key = Library.foldCase(borrower);
+        AtomicLong b = balances.get(key);
+        if (b == null) {
+            AtomicLong created = new AtomicLong();
+            b = balances.putIfAbsent(key, created);
+            if (b == null) b = created;
+        }
+        return b;
+    }
+
+    void setElapsedNanos(long nanos) { elapsedNanos = nanos; }
+
+    // ---------- Queries ----------
+    public LocalDate getAsOf() { return asOf; }
+
+    // Accrued on the user's overdue loans that are still out; 0 for unknown users
+    public long balance(String username) {
+        AtomicLong b = username == null ? null : balances.get(Library.foldCase(username));
+        return b == null ? 0 : b.get();
+    }
+
+    // Accrued on one loan, 0 if it was not overdue at the run or has been returned since
+    public int fineFor(int bookId) {
+        int pos = Arrays.binarySearch(bookIds, bookId);
+        return pos < 0 ? 0 : fines[pos];
+    }
+
+    public long total() { return total.get(); }
+    public int loans() { return openLoans.get(); }
+    public long getElapsedMillis() { return elapsedNanos / 1000000L; }
+
+    // The n largest balances, largest first, as (case-folded username, amount)
+    public List<Map.Entry<String, Long>> largestBalances(int n) {
+        ArrayList<Map.Entry<String, Long>> all = new ArrayList<Map.Entry<String, Long>>(balances.size());
+        for (Map.Entry<String, AtomicLong> e : balances.entrySet()) {
+            long v = e.getValue().get();
+            if (v > 0) all.add(new java.util.AbstractMap.SimpleImmutableEntry<String, Long>(e.getKey(), v));
+        }
+        Collections.sort(all, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) { return Long.compare(b.getValue(), a.getValue()); }
+        });
+        return all.subList(0, Math.min(Math.max(0, n), all.size()));
+    }
+}
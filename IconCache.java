@@ -0,0 +1,51 @@
+import javax.swing.ImageIcon;
+import java.awt.Image;
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide cache of scaled icons keyed by path and size: each image is resolved, decoded and
+// scaled once, and every later request (new windows, theme switches) gets the same ImageIcon.
+// preloadAsync warms it on a background thread while the rest of startup runs.
+public class IconCache {
+    private static final ImageIcon MISSING = new ImageIcon(); // cached "not found", the map takes no nulls
+    private static final ConcurrentHashMap<String, ImageIcon> icons = new ConcurrentHashMap<String, ImageIcon>();
+
+    // Classpath resource first, then a file relative to the working directory; null if neither exists
+    public static ImageIcon get(String path, int w, int h) {
+        String key = path + '@' + w + 'x' + h;
+        ImageIcon icon = icons.get(key);
+        if (icon == null) {
+            icon = load(path, w, h);
+            ImageIcon raced = icons.putIfAbsent(key, icon);
+            if (raced != null) icon = raced;
+        }
+        return icon == MISSING ? null : icon;
+    }
+
+    public static void preloadAsync(final String[] paths, final int w, final int h) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                for (String p : paths) get(p, w, h);
+            }
+        }, "icon-preload");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static ImageIcon load(String path, int w, int h) {
+        try {
+            URL url = IconCache.class.getResource("/" + path);
+            if (url == null) {
+                File f = new File(path);
+                if (f.exists()) url = f.toURI().toURL();
+            }
+            if (url != null) {
+                // ImageIcon waits for the image to be fully decoded and scaled before returning
+                Image img = new ImageIcon(url).getImage().getScaledInstance(w, h, Image.SCALE_SMOOTH);
+                return new ImageIcon(img);
+            }
+        } catch (Exception e) { /* ignore, cached as missing */ }
+        return MISSING;
+    }
+}
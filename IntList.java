@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+// Growable int array kept in ascending order; used for posting lists of book ids.
+public class IntList {
+    private int[] data;
+    private int size;
+
+    public IntList() { this(8); }
+    public IntList(int capacity) { data = new int[Math.max(capacity, 1)]; }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int get(int i) { return data[i]; }
+    public void clear() { size = 0; }
+
+    // Append when v is the largest value so far (the common case, ids only grow), otherwise insert in place
+    public void addSorted(int v) {
+        if (size == 0 || data[size - 1] < v) { append(v); return; }
+        int pos = Arrays.binarySearch(data, 0, size, v);
+        if (pos >= 0) return; // already present
+        pos = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(data, pos, data, pos + 1, size - pos);
+        data[pos] = v;
+        size++;
+    }
+
+    // Caller guarantees order
+    public void append(int v) {
+        ensureCapacity(size + 1);
+        data[size++] = v;
+    }
+
+    public boolean contains(int v) {
+        return Arrays.binarySearch(data, 0, size, v) >= 0;
+    }
+
+    public void removeValue(int v) {
+        int pos = Arrays.binarySearch(data, 0, size, v);
+        if (pos < 0) return;
+        System.arraycopy(data, pos + 1, data, pos, size - pos - 1);
+        size--;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n > data.length) data = Arrays.copyOf(data, Math.max(n, data.length * 2));
+    }
+
+    // Index of the first element >= v (size() if none)
+    public int lowerBound(int v) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (data[mid] < v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
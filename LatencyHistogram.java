@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free latency histogram in the style of HdrHistogram: log-linear buckets, 16 per power of two,
+// so any recorded value is reported within 1/16 (about 6%) of itself from 1 ns up to a few hours.
+// record() is a few atomic increments and never allocates; readers take a Snapshot, and two
+// snapshots subtract into the figures for the interval between them.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 43; // 2^44 ns is about 4.9 hours; longer values share the top bucket
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { /* retry */ }
+    }
+
+    // Values below SUB get one bucket each; above, the top SUB_BITS bits below the leading one pick
+    // one of SUB buckets within the value's power of two
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXPONENT) return BUCKETS - 1;
+        return (exp - SUB_BITS + 1) * SUB + (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    // Largest value that lands in bucket i
+    static long bucketHigh(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        long low = (long) (SUB + i % SUB) << (exp - SUB_BITS);
+        return low + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    // Not atomic with concurrent record() calls: a value recorded meanwhile may be half counted
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        sum.set(0);
+        max.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        return new Snapshot(name, c, total, sum.get(), max.get(), startNanos, System.nanoTime());
+    }
+
+    // ---------- Snapshot ----------
+    // Immutable copy; the getters make it an open-type value for LibraryMetricsMXBean
+    public static class Snapshot {
+        private final String name;
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+        private final long fromNanos;
+        private final long toNanos;
+
+        Snapshot(String name, long[] counts, long count, long sumNanos, long maxNanos, long fromNanos, long toNanos) {
+            this.name = name;
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+        }
+
+        // What was recorded after earlier was taken; max is the bucket bound of the highest value in
+        // the interval, since the exact maximum is only kept since the last reset
+        public Snapshot minus(Snapshot earlier) {
+            long[] c = new long[counts.length];
+            long total = 0;
+            int top = -1;
+            for (int i = 0; i < c.length; i++) {
+                c[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                total += c[i];
+                if (c[i] > 0) top = i;
+            }
+            long intervalMax = top < 0 ? 0 : Math.min(bucketHigh(top), maxNanos);
+            return new Snapshot(name, c, total, Math.max(0, sumNanos - earlier.sumNanos), intervalMax, earlier.toNanos, toNanos);
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+
+        public double getRatePerSecond() {
+            long span = toNanos - fromNanos;
+            return span <= 0 ? 0 : count * 1e9 / span;
+        }
+
+        public double getMeanMicros() { return count == 0 ? 0 : sumNanos / 1e3 / count; }
+        public double getP50Micros() { return percentileNanos(0.50) / 1e3; }
+        public double getP90Micros() { return percentileNanos(0.90) / 1e3; }
+        public double getP99Micros() { return percentileNanos(0.99) / 1e3; }
+        public double getP999Micros() { return percentileNanos(0.999) / 1e3; }
+        public double getMaxMicros() { return maxNanos / 1e3; }
+
+        // Upper bound of the bucket holding the p-th value (capped at the maximum seen)
+        public long percentileNanos(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketHigh(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -1,179 +1,1252 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Library implements Serializable {
-    private ArrayList<Book> books;
-    private ArrayList<User> users;
+    private static final long serialVersionUID = 1652028091647614290L;
+
+    // books keyed by id (insertion order kept for display, or id order in the columnar store);
+    // users indexed by case-folded username
+    private transient Map<Integer, Book> books;
+    private transient ArrayList<User> users;
+    private transient HashMap<String, User> usersByName;
+    private transient volatile BookSearchIndex searchIndex; // built on first search, then kept in sync
+    // dashboard figures kept current by every mutation instead of being recounted
+    private transient AtomicInteger borrowedCount;
+    private transient LinkedHashMap<String, CategoryCount> categories; // folded name -> first spelling seen + books
+    private transient DueDateIndex dueIndex; // active loans by due date
+    private transient volatile FineLedger fineLedger;     // last completed accrual run, null before the first
+    private transient volatile FineLedger accruingLedger; // run in progress, also closed by returns
+    private transient Object accrualLock;
+    // one shared String per distinct author / category spelling across all books
+    private transient StringDictionary authorNames;
+    private transient StringDictionary categoryNames;
     private int nextBookId;
     private int nextUserId;
+    private long journalSeq; // last journal record already contained in the snapshot
+    private transient LibraryJournal journal; // null when journaling is off
+    private transient LoanHistory history;    // every borrow and return ever made; null when off
+    private transient volatile PersistenceScheduler persistence; // null = callers save() themselves
+    private transient Object checkpointLock;
+
+    // Concurrency: the write lock covers structural changes (add/remove/edit, checkpoint capture);
+    // lookups, searches and circulation share the read lock. A loan additionally locks its book's
+    // stripe, and the borrow limit is enforced inside User, so desks on different books never contend.
+    // A batch locks all of its stripes in ascending stripe order, which keeps desks deadlock-free.
+    private transient ReentrantReadWriteLock structure;
+    private transient ReentrantLock[] loanLocks;
+    private static final int LOAN_STRIPES = 256; // power of two
+
+    // on-disk layout stays the original one (two ArrayLists and the id counters) plus the journal position
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("books", ArrayList.class),
+        new ObjectStreamField("users", ArrayList.class),
+        new ObjectStreamField("nextBookId", int.class),
+        new ObjectStreamField("nextUserId", int.class),
+        new ObjectStreamField("journalSeq", long.class)
+    };
 
-    private static final String FILE_NAME = "library_state.dat";
+    private static final Path DATA_DIR = Paths.get(System.getProperty("library.dir", "."));
+    private static final String SNAPSHOT_FILE = "library_state.bin";
+    private static final String LEGACY_FILE = "library_state.dat"; // Java-serialized state, migrated on first load
+    private static final String JOURNAL_FILE = "library_state.journal";
+    private static final boolean JOURNAL_MODE = Boolean.parseBoolean(System.getProperty("library.journal", "true"));
+    private static final String HISTORY_DIR = "library_history";
+    private static final boolean HISTORY_MODE = Boolean.parseBoolean(System.getProperty("library.history", "true"));
+    // "columnar" keeps the catalog in ColumnarCatalog's primitive arrays instead of one Book object per title
+    private static final boolean COLUMNAR_STORE = "columnar".equalsIgnoreCase(System.getProperty("library.store", "objects"));
+    private static final int CHECKPOINT_RECORDS = 5000; // journal records before save() compacts into a snapshot
     private static final int BORROW_DAYS = 14;
     private static final int FINE_PER_DAY = 10; // currency units
+    private static final int NOT_BORROWED = -1, NOT_BORROWER = -2; // returnLocked refusals
+    private static final int NOT_FOUND = -3, ALREADY_BORROWED = -4, OVER_LIMIT = -5; // borrowOne / returnOne refusals
+    // journal records hold strings as writeUTF (at most 65535 bytes, up to 3 per char)
+    public static final int MAX_TEXT_LENGTH = 65535 / 3;
+    private static final String DEFAULT_ADMIN_PASSWORD = "admin123", DEFAULT_USER_PASSWORD = "1234"; // desk demo accounts
 
     public Library() {
-        books = new ArrayList<Book>();
+        books = newCatalog(16);
         users = new ArrayList<User>();
+        usersByName = new HashMap<String, User>();
+        borrowedCount = new AtomicInteger();
+        categories = new LinkedHashMap<String, CategoryCount>();
+        dueIndex = new DueDateIndex();
+        authorNames = new StringDictionary();
+        categoryNames = new StringDictionary();
+        initLocks();
         nextBookId = 1;
         nextUserId = 1;
     }
 
     // ---------- Persistence ----------
+    // Snapshot plus, in journal mode, every journaled mutation made after it
     public static Library load() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(FILE_NAME))) {
-            return (Library) ois.readObject();
-        } catch (Exception e) {
-            return new Library(); // fresh state if not found
+        long t0 = LibraryMetrics.start();
+        try {
+            return loadFromDisk();
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.LOAD, t0);
+        }
+    }
+
+    private static Library loadFromDisk() {
+        Library lib = readSnapshot();
+        if (JOURNAL_MODE) {
+            try {
+                lib.journal = LibraryJournal.openAndReplay(DATA_DIR.resolve(JOURNAL_FILE), lib);
+            } catch (IOException e) {
+                e.printStackTrace(); // keep running without a journal; save() falls back to snapshots
+            }
+        }
+        if (HISTORY_MODE) {
+            try {
+                lib.history = LoanHistory.open(DATA_DIR.resolve(HISTORY_DIR));
+            } catch (IOException e) {
+                e.printStackTrace(); // circulation works without it, only the history queries are lost
+            }
+        }
+        return lib;
+    }
+
+    private static Library readSnapshot() {
+        Path snapshot = DATA_DIR.resolve(SNAPSHOT_FILE);
+        Path legacy = DATA_DIR.resolve(LEGACY_FILE);
+        if (Files.exists(snapshot)) {
+            try {
+                LibrarySnapshot.Contents c = LibrarySnapshot.read(snapshot);
+                Library lib = new Library();
+                lib.restoreSnapshot(c);
+                return lib;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return new Library();
+            }
         }
+        if (Files.exists(legacy)) {
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+                Library lib = (Library) ois.readObject();
+                // one-shot migration: write the binary snapshot, then retire the old file
+                lib.writeSnapshot(lib.books.values(), lib.users, lib.nextBookId, lib.nextUserId, lib.journalSeq);
+                Files.move(legacy, DATA_DIR.resolve(LEGACY_FILE + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+                return lib;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return new Library(); // fresh state if not found
     }
 
+    private void restoreSnapshot(LibrarySnapshot.Contents c) {
+        books = newCatalog(c.books.length);
+        for (Book b : c.books) {
+            countIn(store(b));
+        }
+        for (User u : c.users) indexUser(u);
+        nextBookId = c.nextBookId;
+        nextUserId = c.nextUserId;
+        journalSeq = c.journalSeq;
+    }
+
+    // In journal mode the mutations are already appended, so this only forces them to disk and
+    // compacts into a snapshot every CHECKPOINT_RECORDS records; otherwise it writes a full snapshot
     public void save() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_NAME))) {
-            oos.writeObject(this);
-        } catch (Exception e) {
-            e.printStackTrace();
+        long t0 = LibraryMetrics.start();
+        try {
+            saveNow();
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.SAVE, t0);
+        }
+    }
+
+    private void saveNow() {
+        if (history != null) history.sync();
+        if (journal != null) {
+            journal.sync();
+            if (journal.records() < CHECKPOINT_RECORDS && !journal.lostRecords()) return;
+        }
+        checkpoint();
+    }
+
+    // Copies the state under the write lock, rotates the journal at that exact point, and writes
+    // the copy without holding the lock, so mutations carry on while the snapshot goes to disk
+    public void checkpoint() {
+        try {
+            checkpoint(null);
+        } catch (IOException e) {
+            e.printStackTrace(); // the journal (or the previous snapshot) still has everything
+        }
+    }
+
+    // imported (may be null) goes into the captured copy, and into the live catalog only once the
+    // snapshot holding it is on disk: the books are never journaled, so if the rotation or the write
+    // fails this throws and the catalog is left without them rather than with books a restart loses
+    private void checkpoint(Collection<Book> imported) throws IOException {
+        synchronized (checkpointLock) {
+            Collection<Book> bookCopy;
+            ArrayList<User> userCopy;
+            int nextBook, nextUser;
+            long seq;
+            structure.writeLock().lock();
+            try {
+                // the columnar store copies its arrays rather than building a Book per title
+                if (books instanceof ColumnarCatalog) {
+                    ColumnarCatalog copy = ((ColumnarCatalog) books).copy();
+                    if (imported != null) for (Book b : imported) copy.put(b.getBookId(), b);
+                    bookCopy = copy.values();
+                } else {
+                    ArrayList<Book> copy = copyBooks();
+                    if (imported != null) copy.addAll(imported);
+                    bookCopy = copy;
+                }
+                userCopy = new ArrayList<User>(users.size());
+                for (User u : users) userCopy.add(u.copy());
+                nextBook = nextBookId;
+                nextUser = nextUserId;
+                seq = journal != null ? journal.lastSeq() : journalSeq;
+                if (journal != null) journal.rotate();
+            } finally {
+                structure.writeLock().unlock();
+            }
+            writeSnapshot(bookCopy, userCopy, nextBook, nextUser, seq);
+            if (journal != null) {
+                journal.snapshotWritten(seq);
+                try {
+                    journal.dropRotated();
+                } catch (IOException e) {
+                    e.printStackTrace(); // its records are all covered by the new snapshot, replay skips them
+                }
+            }
+            if (imported != null) {
+                // their ids were reserved, so nothing journaled since the capture can refer to them
+                structure.writeLock().lock();
+                try {
+                    insertImported(imported);
+                } finally {
+                    structure.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // Detached copies of the books (or of those on loan) at one point in time, for CatalogExporter:
+    // taken under the read lock with every loan stripe held, so no single or batch borrow or return
+    // is half-applied in it. Desks wait for the copy only; the caller formats and writes it after.
+    List<Book> exportSnapshot(boolean loansOnly) {
+        structure.readLock().lock();
+        try {
+            for (ReentrantLock stripe : loanLocks) stripe.lock(); // ascending, like lockStripes
+            try {
+                ArrayList<Book> copy = new ArrayList<Book>(loansOnly ? borrowedCount.get() : books.size());
+                for (Book b : books.values()) {
+                    if (!loansOnly || !b.isAvailable()) copy.add(b.copy());
+                }
+                return copy;
+            } finally {
+                for (int i = loanLocks.length - 1; i >= 0; i--) loanLocks[i].unlock();
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private ArrayList<Book> copyBooks() {
+        ArrayList<Book> copy = new ArrayList<Book>(books.size());
+        for (Book b : books.values()) copy.add(b.copy());
+        return copy;
+    }
+
+    // Written beside the target and renamed over it, so a crash never leaves a half-written snapshot
+    private void writeSnapshot(Collection<Book> bookState, Collection<User> userState, int nextBook, int nextUser, long seq) throws IOException {
+        Path target = DATA_DIR.resolve(SNAPSHOT_FILE);
+        Path tmp = DATA_DIR.resolve(SNAPSHOT_FILE + ".tmp");
+        Object event = LibraryEvents.beginPersistence();
+        LibrarySnapshot.write(tmp, bookState, userState, nextBook, nextUser, seq);
+        LibrarySnapshot.install(tmp, target);
+        LibraryEvents.persistence(event, "snapshot", event == null ? 0 : Files.size(target));
+        structure.writeLock().lock();
+        try {
+            if (seq > journalSeq) journalSeq = seq;
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // Hands save() to a background thread that coalesces bursts of mutations into one write
+    public void enableBackgroundPersistence(long maxLatencyMillis) {
+        synchronized (checkpointLock) {
+            if (persistence == null) persistence = new PersistenceScheduler(this, maxLatencyMillis);
+        }
+    }
+
+    // Flush-on-exit: drains the background writer, then compacts everything into a snapshot
+    public void close() {
+        PersistenceScheduler p;
+        synchronized (checkpointLock) {
+            p = persistence;
+            persistence = null;
+        }
+        if (p != null) p.shutdown();
+        checkpoint();
+        if (history != null) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Map<Integer, Book> newCatalog(int expectedBooks) {
+        if (COLUMNAR_STORE) return new ColumnarCatalog(expectedBooks);
+        return new LinkedHashMap<Integer, Book>(expectedBooks * 4 / 3 + 16);
+    }
+
+    // Puts b in the catalog and returns the catalog's own instance: b itself, or a view over its row
+    private Book store(Book b) {
+        books.put(b.getBookId(), b);
+        return books.get(b.getBookId());
+    }
+
+    private void initLocks() {
+        checkpointLock = new Object();
+        accrualLock = new Object();
+        structure = new ReentrantReadWriteLock();
+        loanLocks = new ReentrantLock[LOAN_STRIPES];
+        for (int i = 0; i < LOAN_STRIPES; i++) loanLocks[i] = new ReentrantLock();
+    }
+
+    private static int stripe(int bookId) {
+        return (bookId * 0x9E3779B9) >>> 24; // Fibonacci hash, top 8 bits
+    }
+
+    private ReentrantLock loanLock(int bookId) {
+        return loanLocks[stripe(bookId)];
+    }
+
+    // Locks the distinct stripes of the given books in ascending order; returns them for unlockStripes
+    private int[] lockStripes(int[] bookIds) {
+        int[] s = new int[bookIds.length];
+        for (int i = 0; i < s.length; i++) s[i] = stripe(bookIds[i]);
+        Arrays.sort(s);
+        int n = 0;
+        for (int i = 0; i < s.length; i++) {
+            if (n == 0 || s[n - 1] != s[i]) s[n++] = s[i];
+        }
+        s = Arrays.copyOf(s, n);
+        for (int i = 0; i < n; i++) loanLocks[s[i]].lock();
+        return s;
+    }
+
+    private void unlockStripes(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) loanLocks[stripes[i]].unlock();
+    }
+
+    // Called after every mutation, with no lock held
+    private void dirty() {
+        LibraryJournal j = journal;
+        if (j != null && j.failed()) checkpointAfterJournalFailure();
+        PersistenceScheduler p = persistence;
+        if (p != null) p.markDirty();
+    }
+
+    // A journal append failed, so memory is ahead of the log: snapshot it now rather than at the next
+    // CHECKPOINT_RECORDS. The first desk to get here does it and the rotation gives the journal a new
+    // file; if the snapshot itself cannot be written, save() retries until one is (lostRecords()).
+    private void checkpointAfterJournalFailure() {
+        synchronized (checkpointLock) {
+            if (journal != null && journal.failed()) checkpoint();
+        }
+    }
+
+    long getJournalSeq() { return journalSeq; }
+    void setJournalSeq(long seq) { journalSeq = seq; }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("books", new ArrayList<Book>(books.values()));
+        f.put("users", users);
+        f.put("nextBookId", nextBookId);
+        f.put("nextUserId", nextUserId);
+        f.put("journalSeq", journalSeq);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        ArrayList<Book> savedBooks = (ArrayList<Book>) f.get("books", null);
+        ArrayList<User> savedUsers = (ArrayList<User>) f.get("users", null);
+        nextBookId = f.get("nextBookId", 1);
+        nextUserId = f.get("nextUserId", 1);
+        journalSeq = f.get("journalSeq", 0L);
+
+        books = newCatalog(savedBooks == null ? 16 : savedBooks.size());
+        borrowedCount = new AtomicInteger();
+        categories = new LinkedHashMap<String, CategoryCount>();
+        dueIndex = new DueDateIndex();
+        authorNames = new StringDictionary();
+        categoryNames = new StringDictionary();
+        if (savedBooks != null) {
+            for (Book b : savedBooks) {
+                countIn(store(b));
+            }
+        }
+        users = new ArrayList<User>();
+        usersByName = new HashMap<String, User>();
+        initLocks();
+        if (savedUsers != null) for (User u : savedUsers) indexUser(u);
+    }
+
+    // Case folding with the same per-char rules as String.equalsIgnoreCase, so index hits match it exactly
+    static String foldCase(String s) {
+        if (s == null) return null;
+        char[] out = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (f != c) {
+                if (out == null) out = s.toCharArray();
+                out[i] = f;
+            }
+        }
+        return out == null ? s : new String(out);
+    }
+
+    // Refuses a mutation before anything changes, rather than journaling a record it cannot hold
+    static void checkText(String... values) {
+        for (String v : values) {
+            if (v != null && v.length() > MAX_TEXT_LENGTH) {
+                throw new IllegalArgumentException("Text is too long (at most " + MAX_TEXT_LENGTH + " characters).");
+            }
         }
     }
 
     // ---------- Users ----------
+    // Seed defaults if fresh install (no users)
+    public void seedDefaultsIfEmpty() {
+        if (totalUsers() > 0) return;
+        addUser("admin", DEFAULT_ADMIN_PASSWORD, "ADMIN");
+        addUser("user1", DEFAULT_USER_PASSWORD, "USER");
+        seedBooks();
+    }
+
+    public boolean changePassword(String username, String newPassword) {
+        checkText(newPassword);
+        if (newPassword == null || newPassword.isEmpty()) return false;
+        structure.writeLock().lock();
+        try {
+            User u = usersByName.get(foldCase(username));
+            if (u == null) return false;
+            u.setPassword(newPassword);
+            if (journal != null) journal.passwordChanged(u);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        dirty();
+        return true;
+    }
+
+    // Headless server: no well-known passwords, only an admin with the configured one
+    public void seedAdminIfEmpty(String adminPassword) {
+        if (totalUsers() > 0) return;
+        addUser("admin", adminPassword, "ADMIN");
+        seedBooks();
+    }
+
+    // True while a seeded account still has the password everybody knows from the README
+    static boolean hasDefaultPassword(User u) {
+        if (u.getUsername().equals("admin")) return u.checkPassword(DEFAULT_ADMIN_PASSWORD);
+        if (u.getUsername().equals("user1")) return u.checkPassword(DEFAULT_USER_PASSWORD);
+        return false;
+    }
+
+    private void seedBooks() {
+        addBook("Clean Code", "Robert C. Martin", "Programming");
+        addBook("Effective Java", "Joshua Bloch", "Programming");
+        addBook("Head First Design Patterns", "Eric Freeman", "Programming");
+        addBook("The Alchemist", "Paulo Coelho", "Fiction");
+    }
+
     public User addUser(String username, String password, String role) {
-        User u = new User(nextUserId++, username, password, role);
-        users.add(u);
+        checkText(username, password, role);
+        Object event = LibraryEvents.beginMutation();
+        User u;
+        structure.writeLock().lock();
+        try {
+            u = new User(nextUserId++, username, password, role);
+            indexUser(u);
+            if (journal != null) journal.userAdded(u);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        dirty();
+        LibraryEvents.mutation(event, "addUser", 0, 1, true);
         return u;
     }
 
+    private void indexUser(User u) {
+        users.add(u);
+        String key = foldCase(u.getUsername());
+        if (!usersByName.containsKey(key)) usersByName.put(key, u); // first match wins, as with the old scan
+    }
+
     public User findUserByUsername(String username) {
-        for (User u : users) if (u.getUsername().equalsIgnoreCase(username)) return u;
-        return null;
+        if (username == null) return null;
+        String key = foldCase(username);
+        structure.readLock().lock();
+        try {
+            return usersByName.get(key);
+        } finally {
+            structure.readLock().unlock();
+        }
     }
 
     public ArrayList<User> getUsers() { return users; }
 
     // ---------- Books ----------
     public Book addBook(String title, String author, String category) {
-        Book b = new Book(nextBookId++, title, author, category);
-        books.add(b);
+        checkText(title, author, category);
+        Object event = LibraryEvents.beginMutation();
+        Book b;
+        structure.writeLock().lock();
+        try {
+            b = store(new Book(nextBookId++, title, author, category));
+            countIn(b);
+            if (searchIndex != null) searchIndex.add(b);
+            if (journal != null) journal.bookAdded(b);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        dirty();
+        LibraryEvents.mutation(event, "addBook", b.getBookId(), 1, true);
         return b;
     }
 
-    public boolean removeBook(int bookId) {
-        for (int i = 0; i < books.size(); i++) {
-            if (books.get(i).getBookId() == bookId) {
-                if (!books.get(i).isAvailable()) return false; // can't remove borrowed book
-                books.remove(i);
-                return true;
+    // Edits go through here so the search index sees them; null or empty values are left unchanged
+    public boolean updateBook(int bookId, String title, String author, String category) {
+        checkText(title, author, category);
+        Object event = LibraryEvents.beginMutation();
+        boolean updated = editBook(bookId, title, author, category);
+        LibraryEvents.mutation(event, "updateBook", bookId, 1, updated);
+        return updated;
+    }
+
+    private boolean editBook(int bookId, String title, String author, String category) {
+        structure.writeLock().lock();
+        try {
+            Book b = books.get(bookId);
+            if (b == null) return false;
+            if (title != null && !title.isEmpty()) b.setTitle(title);
+            if (author != null && !author.isEmpty()) b.setAuthor(authorNames.canonical(author));
+            if (category != null && !category.isEmpty()) {
+                uncountCategory(b.getCategory());
+                b.setCategory(categoryNames.canonical(category));
+                countCategory(b.getCategory());
             }
+            if (searchIndex != null) searchIndex.update(b);
+            if (journal != null) journal.bookUpdated(b);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        dirty();
+        return true;
+    }
+
+    public boolean removeBook(int bookId) {
+        Object event = LibraryEvents.beginMutation();
+        boolean removed = deleteBook(bookId);
+        LibraryEvents.mutation(event, "removeBook", bookId, 1, removed);
+        return removed;
+    }
+
+    private boolean deleteBook(int bookId) {
+        structure.writeLock().lock();
+        try {
+            Book b = books.get(bookId);
+            if (b == null) return false;
+            if (!b.isAvailable()) return false; // can't remove borrowed book
+            books.remove(bookId);
+            countOut(b);
+            if (searchIndex != null) searchIndex.remove(bookId);
+            if (journal != null) journal.bookRemoved(bookId);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        dirty();
+        return true;
+    }
+
+    // Bulk import (see CatalogImporter): hands out a block of count consecutive ids up front, so
+    // the importer can build its books without holding any lock; returns the first id of the block
+    public int reserveBookIds(int count) {
+        structure.writeLock().lock();
+        try {
+            int first = nextBookId;
+            nextBookId += count;
+            return first;
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // Adds books built with reserved ids and persists them with a single checkpoint
+    // Throws, with nothing added, when the snapshot holding the books cannot be written
+    public void importBooks(Collection<Book> imported) throws IOException {
+        Object event = LibraryEvents.beginMutation();
+        boolean applied = false;
+        try {
+            checkpoint(imported);
+            applied = true;
+        } finally {
+            LibraryEvents.mutation(event, "import", 0, imported.size(), applied);
+        }
+    }
+
+    // Caller holds the write lock; a large batch drops the search index instead of feeding it book by
+    // book, and the next search rebuilds it in one pass
+    private void insertImported(Collection<Book> imported) {
+        if (searchIndex != null && imported.size() > books.size() / 4) searchIndex = null;
+        for (Book added : imported) {
+            Book b = store(added);
+            countIn(b);
+            if (searchIndex != null) searchIndex.add(b);
+            if (b.getBookId() >= nextBookId) nextBookId = b.getBookId() + 1;
         }
-        return false;
     }
 
     public Book getBookById(int id) {
-        for (Book b : books) if (b.getBookId() == id) return b;
-        return null;
+        structure.readLock().lock();
+        try {
+            return books.get(id);
+        } finally {
+            structure.readLock().unlock();
+        }
     }
 
+    // Served by the trigram index; same substring semantics as a full scan with toLowerCase().contains
+    // Caller holds the read lock; concurrent first searches build the index once
+    private BookSearchIndex searchIndex() {
+        BookSearchIndex idx = searchIndex;
+        if (idx == null) {
+            synchronized (this) {
+                idx = searchIndex;
+                if (idx == null) {
+                    idx = new BookSearchIndex();
+                    for (Book b : books.values()) idx.add(b);
+                    searchIndex = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    // Every match in one list; prefer searchPage or searchIterator when the caller may not need them all
     public List<Book> searchBooks(String query, String searchBy, String categoryFilter) {
-        ArrayList<Book> result = new ArrayList<Book>();
-        String q = query == null ? "" : query.trim().toLowerCase();
-        String cat = categoryFilter == null ? "" : categoryFilter.trim().toLowerCase();
-        for (Book b : books) {
-            boolean matchesCategory = cat.isEmpty() || "All".equalsIgnoreCase(categoryFilter) || b.getCategory().equalsIgnoreCase(categoryFilter);
-            if (!matchesCategory) continue;
+        return searchBooksFrom(query, searchBy, categoryFilter, 1, Integer.MAX_VALUE);
+    }
 
-            if (q.isEmpty()) {
-                result.add(b);
-            } else if ("Title".equalsIgnoreCase(searchBy) && b.getTitle().toLowerCase().contains(q)) {
-                result.add(b);
-            } else if ("Author".equalsIgnoreCase(searchBy) && b.getAuthor().toLowerCase().contains(q)) {
-                result.add(b);
-            } else if ("Category".equalsIgnoreCase(searchBy) && b.getCategory().toLowerCase().contains(q)) {
-                result.add(b);
-            } else if ("ID".equalsIgnoreCase(searchBy) && String.valueOf(b.getBookId()).contains(q)) {
-                result.add(b);
-            } else if ("All".equalsIgnoreCase(searchBy)
-                && (b.getTitle().toLowerCase().contains(q) || b.getAuthor().toLowerCase().contains(q) || b.getCategory().toLowerCase().contains(q) || String.valueOf(b.getBookId()).contains(q))) {
-                result.add(b);
-            }
+    // One slice of searchBooks: up to limit matches with id >= fromId, in catalog order. Continue
+    // from the last returned id + 1. Interrupting the calling thread aborts with CancellationException.
+    public List<Book> searchBooksFrom(String query, String searchBy, String categoryFilter, int fromId, int limit) {
+        long t0 = LibraryMetrics.start();
+        Object event = LibraryEvents.beginSearch();
+        List<Book> result = null;
+        try {
+            result = findBooks(query, searchBy, categoryFilter, fromId, limit);
+            return result;
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.SEARCH, t0);
+            LibraryEvents.search(event, searchBy, categoryFilter, query, fromId, result == null ? 0 : result.size());
         }
-        return result;
     }
 
-    public ArrayList<Book> getBooks() { return books; }
+    private List<Book> findBooks(String query, String searchBy, String categoryFilter, int fromId, int limit) {
+        structure.readLock().lock();
+        try {
+            IntList ids = searchIndex().search(query, searchBy, categoryFilter, fromId, limit);
+            ArrayList<Book> result = new ArrayList<Book>(ids.size());
+            for (int i = 0; i < ids.size(); i++) result.add(books.get(ids.get(i)));
+            return result;
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Cursor paging: pass null for the first page, then the previous page's nextToken
+    public SearchPage searchPage(String query, String searchBy, String categoryFilter, int pageSize, String token) {
+        int from = SearchPage.resumeFrom(token, query, searchBy, categoryFilter);
+        int size = Math.max(1, pageSize);
+        List<Book> page = searchBooksFrom(query, searchBy, categoryFilter, from, size);
+        String next = page.size() < size ? null
+            : SearchPage.token(page.get(page.size() - 1).getBookId() + 1, query, searchBy, categoryFilter);
+        return new SearchPage(page, next);
+    }
+
+    // Lazy matches: pages of ITERATOR_PAGE are fetched as the caller advances, so stopping early is cheap
+    private static final int ITERATOR_PAGE = 256;
+
+    public Iterator<Book> searchIterator(final String query, final String searchBy, final String categoryFilter) {
+        return new Iterator<Book>() {
+            private List<Book> page = Collections.emptyList();
+            private int pos;
+            private int from = 1;
+            private boolean done;
+
+            public boolean hasNext() {
+                if (pos < page.size()) return true;
+                if (done) return false;
+                page = searchBooksFrom(query, searchBy, categoryFilter, from, ITERATOR_PAGE);
+                pos = 0;
+                done = page.size() < ITERATOR_PAGE;
+                if (!page.isEmpty()) from = page.get(page.size() - 1).getBookId() + 1;
+                return !page.isEmpty();
+            }
+
+            public Book next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(pos++);
+            }
+        };
+    }
+
+    public Stream<Book> searchStream(String query, String searchBy, String categoryFilter) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(searchIterator(query, searchBy, categoryFilter),
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Live view: only iterate it while no other thread is adding or removing books
+    public Collection<Book> getBooks() { return books.values(); }
 
     // ---------- Borrow / Return ----------
+    // Public entry points are timed (LibraryMetrics) and traced (LibraryEvents); the work is below them
     public String borrowBook(User user, int bookId) {
-        Book b = getBookById(bookId);
-        if (b == null) return "Book not found.";
-        if (!b.isAvailable()) return "Book is already borrowed.";
-        if (!user.canBorrowMore()) return "Borrow limit reached (max " + User.BORROW_LIMIT + " books).";
-
-        String today = LocalDate.now().toString();
-        String due = LocalDate.now().plusDays(BORROW_DAYS).toString();
-        b.markBorrowed(user.getUsername(), today, due);
-        user.borrowBookId(bookId);
-        return "Borrowed successfully. Due date: " + due;
+        return borrowResult(user, bookId).message;
     }
 
     public String returnBook(User user, int bookId) {
-        Book b = getBookById(bookId);
-        if (b == null) return "Book not found.";
-        if (b.isAvailable()) return "Book is not borrowed.";
+        return returnResult(user, bookId).message;
+    }
 
-        // Only allow return if admin or borrower
-        if (!user.isAdmin() && !user.getUsername().equalsIgnoreCase(b.getBorrowerUsername())) {
-            return "You cannot return a book borrowed by another user.";
+    // Same as borrowBook / returnBook, with the outcome spelled out for callers that branch on it
+    public LoanResult borrowResult(User user, int bookId) {
+        long t0 = LibraryMetrics.start();
+        Object event = LibraryEvents.beginMutation();
+        boolean applied = false;
+        try {
+            int due = borrowOne(user, bookId);
+            applied = due >= 0;
+            return new LoanResult(bookId, applied, due != NOT_FOUND, 0, borrowMessage(due));
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.BORROW, t0);
+            LibraryEvents.mutation(event, "borrow", bookId, 1, applied);
         }
+    }
 
-        // calculate fine
-        String due = b.getDueDate();
-        int fine = 0;
-        if (due != null) {
+    public LoanResult returnResult(User user, int bookId) {
+        long t0 = LibraryMetrics.start();
+        Object event = LibraryEvents.beginMutation();
+        boolean applied = false;
+        try {
+            int fine = returnOne(user, bookId);
+            applied = fine >= 0;
+            return new LoanResult(bookId, applied, fine != NOT_FOUND, Math.max(fine, 0), returnMessage(fine));
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.RETURN, t0);
+            LibraryEvents.mutation(event, "return", bookId, 1, applied);
+        }
+    }
+
+    // Returns the due day, or a negative refusal code
+    private int borrowOne(User user, int bookId) {
+        int due;
+        structure.readLock().lock();
+        try {
+            Book b = books.get(bookId);
+            if (b == null) return NOT_FOUND;
+            ReentrantLock stripe = loanLock(bookId);
+            stripe.lock();
             try {
-                LocalDate dueDate = LocalDate.parse(due);
-                long daysLate = java.time.temporal.ChronoUnit.DAYS.between(dueDate, LocalDate.now());
-                if (daysLate > 0) fine = (int) (daysLate * FINE_PER_DAY);
-            } catch (Exception e) {
-                fine = 0;
+                if (!b.isAvailable()) return ALREADY_BORROWED;
+                if (!user.tryBorrowBookId(bookId)) return OVER_LIMIT;
+
+                int today = (int) LocalDate.now().toEpochDay();
+                due = today + BORROW_DAYS;
+                b.markBorrowed(user.getUsername(), today, due);
+                borrowedCount.incrementAndGet();
+                indexLoan(b);
+                if (journal != null) journal.bookBorrowed(b);
+                if (history != null) history.borrowed(b);
+            } finally {
+                stripe.unlock();
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        dirty();
+        return due;
+    }
+
+    // Returns the fine, or a negative refusal code
+    private int returnOne(User user, int bookId) {
+        int fine;
+        structure.readLock().lock();
+        try {
+            Book b = books.get(bookId);
+            if (b == null) return NOT_FOUND;
+            ReentrantLock stripe = loanLock(bookId);
+            stripe.lock();
+            try {
+                fine = returnLocked(user, b);
+            } finally {
+                stripe.unlock();
             }
+        } finally {
+            structure.readLock().unlock();
         }
+        if (fine >= 0) dirty();
+        return fine;
+    }
+
+    private static final String LIMIT_MESSAGE = "Borrow limit reached (max " + User.BORROW_LIMIT + " books).";
+
+    private static String borrowMessage(int due) {
+        if (due == NOT_FOUND) return "Book not found.";
+        if (due == ALREADY_BORROWED) return "Book is already borrowed.";
+        if (due == OVER_LIMIT) return LIMIT_MESSAGE;
+        return "Borrowed successfully. Due date: " + Book.formatDay(due);
+    }
+
+    private static String returnMessage(int fine) {
+        if (fine == NOT_FOUND) return "Book not found.";
+        if (fine < 0) return fine == NOT_BORROWED ? "Book is not borrowed." : "You cannot return a book borrowed by another user.";
+        if (fine > 0) {
+            return "Returned. Fine due: ₹" + fine;
+        }
+        return "Returned successfully.";
+    }
+
+    // Caller holds the read lock and the book's loan stripe; returns the fine or a negative refusal code
+    private int returnLocked(User user, Book b) {
+        int refusal = returnRefusal(user, b);
+        if (refusal < 0) return refusal;
+        int fine = applyReturn(user, b);
+        if (journal != null) journal.bookReturned(b.getBookId());
+        return fine;
+    }
+
+    // NOT_BORROWED / NOT_BORROWER, or 0 when user may return b
+    private static int returnRefusal(User user, Book b) {
+        if (b.isAvailable()) return NOT_BORROWED;
+
+        // Only allow return if admin or borrower
+        if (!user.isAdmin() && !user.getUsername().equalsIgnoreCase(b.getBorrowerUsername())) {
+            return NOT_BORROWER;
+        }
+        return 0;
+    }
+
+    // Caller holds the book's loan stripe and has checked returnRefusal; returns the fine, does not
+    // journal (the loan history is recorded here, so single and batch returns both reach it)
+    private int applyReturn(User user, Book b) {
+        int bookId = b.getBookId();
+        // calculate fine
+        int today = (int) LocalDate.now().toEpochDay();
+        int fine = fineFor(b.getDueDay(), today);
 
         String borrower = b.getBorrowerUsername();
+        if (history != null) history.returned(b, borrower, today, fine);
+        unindexLoan(b);
         b.markReturned();
+        borrowedCount.decrementAndGet();
         // if user returning is admin but borrower exists, remove borrow id from borrower user
         if (user.isAdmin() && borrower != null) {
-            User borrowerUser = findUserByUsername(borrower);
+            User borrowerUser = usersByName.get(foldCase(borrower));
             if (borrowerUser != null) borrowerUser.returnBookId(bookId);
         } else {
             user.returnBookId(bookId);
         }
+        return fine;
+    }
 
-        if (fine > 0) {
-            return "Returned. Fine due: ₹" + fine;
+    // ---------- Batch borrow / return ----------
+    // A stack of books at the desk: every book is checked first (and the borrow limit for the whole
+    // stack), then either all of them are lent or none is. One pass over the locks, one journal record.
+    public BatchResult borrowBooks(User user, int[] bookIds) {
+        long t0 = LibraryMetrics.start();
+        Object event = LibraryEvents.beginMutation();
+        BatchResult result = null;
+        try {
+            result = borrowBatch(user, bookIds);
+            return result;
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.BORROW, t0);
+            LibraryEvents.mutation(event, "borrowBatch", bookIds.length > 0 ? bookIds[0] : 0, bookIds.length, result != null && result.applied);
         }
-        return "Returned successfully.";
     }
 
+    public BatchResult returnBooks(User user, int[] bookIds) {
+        long t0 = LibraryMetrics.start();
+        Object event = LibraryEvents.beginMutation();
+        BatchResult result = null;
+        try {
+            result = returnBatch(user, bookIds);
+            return result;
+        } finally {
+            LibraryMetrics.stop(LibraryMetrics.RETURN, t0);
+            LibraryEvents.mutation(event, "returnBatch", bookIds.length > 0 ? bookIds[0] : 0, bookIds.length, result != null && result.applied);
+        }
+    }
+
+    private BatchResult borrowBatch(User user, int[] bookIds) {
+        int n = bookIds.length;
+        String[] messages = new String[n];
+        if (n == 0) return new BatchResult(bookIds, messages, false, 0, "No books selected.");
+        int due = 0;
+        boolean ok;
+        structure.readLock().lock();
+        try {
+            Book[] batch = lookupBatch(bookIds, messages);
+            int[] stripes = lockStripes(bookIds);
+            try {
+                ok = true;
+                for (int i = 0; i < n; i++) {
+                    if (messages[i] == null && !batch[i].isAvailable()) messages[i] = "Book is already borrowed.";
+                    if (messages[i] != null) ok = false;
+                }
+                if (ok && !user.tryBorrowBookIds(bookIds)) {
+                    ok = false;
+                    Arrays.fill(messages, LIMIT_MESSAGE);
+                }
+                if (ok) {
+                    int today = (int) LocalDate.now().toEpochDay();
+                    due = today + BORROW_DAYS;
+                    for (Book b : batch) {
+                        b.markBorrowed(user.getUsername(), today, due);
+                        indexLoan(b);
+                        if (history != null) history.borrowed(b);
+                    }
+                    borrowedCount.addAndGet(n);
+                    if (journal != null) journal.booksBorrowed(batch);
+                }
+            } finally {
+                unlockStripes(stripes);
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        if (!ok) return refused(bookIds, messages, "Nothing was borrowed.", "Not borrowed: another book in this batch was refused.");
+        dirty();
+        Arrays.fill(messages, "Borrowed successfully. Due date: " + Book.formatDay(due));
+        return new BatchResult(bookIds, messages, true, 0,
+            "Borrowed " + n + (n == 1 ? " book" : " books") + ". Due date: " + Book.formatDay(due));
+    }
+
+    private BatchResult returnBatch(User user, int[] bookIds) {
+        int n = bookIds.length;
+        String[] messages = new String[n];
+        if (n == 0) return new BatchResult(bookIds, messages, false, 0, "No books selected.");
+        int total = 0;
+        boolean ok;
+        structure.readLock().lock();
+        try {
+            Book[] batch = lookupBatch(bookIds, messages);
+            int[] stripes = lockStripes(bookIds);
+            try {
+                ok = true;
+                for (int i = 0; i < n; i++) {
+                    if (messages[i] == null) {
+                        int refusal = returnRefusal(user, batch[i]);
+                        if (refusal < 0) messages[i] = returnMessage(refusal);
+                    }
+                    if (messages[i] != null) ok = false;
+                }
+                if (ok) {
+                    for (int i = 0; i < n; i++) {
+                        int fine = applyReturn(user, batch[i]);
+                        messages[i] = returnMessage(fine);
+                        total += fine;
+                    }
+                    if (journal != null) journal.booksReturned(bookIds);
+                }
+            } finally {
+                unlockStripes(stripes);
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        if (!ok) return refused(bookIds, messages, "Nothing was returned.", "Not returned: another book in this batch was refused.");
+        dirty();
+        String summary = "Returned " + n + (n == 1 ? " book" : " books") + ".";
+        return new BatchResult(bookIds, messages, true, total, total > 0 ? summary + " Total fine due: ₹" + total : summary);
+    }
+
+    // Caller holds the read lock. Books by position; missing and repeated ids get their refusal message
+    private Book[] lookupBatch(int[] bookIds, String[] messages) {
+        Book[] batch = new Book[bookIds.length];
+        HashSet<Integer> seen = new HashSet<Integer>();
+        for (int i = 0; i < bookIds.length; i++) {
+            batch[i] = books.get(bookIds[i]);
+            if (batch[i] == null) messages[i] = "Book not found.";
+            else if (!seen.add(bookIds[i])) messages[i] = "Listed more than once.";
+        }
+        return batch;
+    }
+
+    private static BatchResult refused(int[] bookIds, String[] messages, String summary, String heldBack) {
+        int refusedCount = 0;
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] == null) messages[i] = heldBack;
+            else refusedCount++;
+        }
+        return new BatchResult(bookIds, messages, false, 0,
+            summary + " " + refusedCount + " of " + messages.length + (messages.length == 1 ? " book" : " books")
+                + (refusedCount == 1 ? " was" : " were") + " refused.");
+    }
+
+    // ---------- Journal replay (ids and dates come from the record, nothing is re-journaled) ----------
+    void restoreBook(int id, String title, String author, String category) {
+        Book replaced = books.get(id);
+        if (replaced != null) countOut(replaced);
+        Book b = store(new Book(id, title, author, category));
+        countIn(b);
+        if (searchIndex != null) searchIndex.add(b);
+        if (id >= nextBookId) nextBookId = id + 1;
+    }
+
+    void restoreUser(int id, String username, String password, String role) {
+        indexUser(new User(id, username, password, role));
+        if (id >= nextUserId) nextUserId = id + 1;
+    }
+
+    void restoreBorrow(int bookId, String username, int borrowDay, int dueDay) {
+        Book b = books.get(bookId);
+        if (b == null) return;
+        if (b.isAvailable()) borrowedCount.incrementAndGet();
+        else unindexLoan(b);
+        b.markBorrowed(username, borrowDay, dueDay);
+        indexLoan(b);
+        User u = findUserByUsername(username);
+        if (u != null) u.borrowBookId(bookId);
+    }
+
+    void restorePassword(String username, String password) {
+        User u = findUserByUsername(username);
+        if (u != null) u.setPassword(password);
+    }
+
+    void restoreReturn(int bookId) {
+        Book b = books.get(bookId);
+        if (b == null || b.isAvailable()) return;
+        User u = findUserByUsername(b.getBorrowerUsername());
+        unindexLoan(b);
+        b.markReturned();
+        borrowedCount.decrementAndGet();
+        if (u != null) u.returnBookId(bookId);
+    }
+
+    // ---------- Due dates ----------
+    // Caller holds the book's loan stripe (or the write lock); b is out on loan
+    private void indexLoan(Book b) {
+        if (b.getDueDay() != Book.NO_DATE) dueIndex.add(b.getBookId(), b.getDueDay());
+    }
+
+    // Every loan that ends passes through here, which also closes its accrued fine (if any)
+    private void unindexLoan(Book b) {
+        if (b.getDueDay() != Book.NO_DATE) dueIndex.remove(b.getBookId(), b.getDueDay());
+        FineLedger ledger = fineLedger, accruing = accruingLedger;
+        if (ledger != null) ledger.loanClosed(b.getBookId(), b.getBorrowerUsername());
+        if (accruing != null && accruing != ledger) accruing.loanClosed(b.getBookId(), b.getBorrowerUsername());
+    }
+
+    // Loans due from one date to another (both inclusive), earliest first; only that range is read
+    public List<Book> loansDueBetween(LocalDate from, LocalDate to) {
+        return loansDue(from.toEpochDay(), to.toEpochDay());
+    }
+
+    // Loans whose due date is before today, most overdue first
+    public List<Book> overdueLoans() {
+        return loansDue(Integer.MIN_VALUE + 1, LocalDate.now().toEpochDay() - 1);
+    }
+
+    public int overdueCount() {
+        return dueIndex.countBetween(Integer.MIN_VALUE + 1, (int) LocalDate.now().toEpochDay() - 1);
+    }
+
+    private List<Book> loansDue(long fromDay, long toDay) {
+        int from = (int) Math.max(fromDay, Integer.MIN_VALUE + 1);
+        int to = (int) Math.min(toDay, Integer.MAX_VALUE);
+        structure.readLock().lock();
+        try {
+            int[] ids = dueIndex.dueBetween(from, to);
+            ArrayList<Book> result = new ArrayList<Book>(ids.length);
+            for (int id : ids) {
+                Book b = books.get(id);
+                if (b != null) result.add(b);
+            }
+            return result;
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // ---------- Fines ----------
+    private static int fineFor(int dueDay, long today) {
+        if (dueDay == Book.NO_DATE) return 0;
+        long daysLate = today - dueDay;
+        return daysLate > 0 ? (int) (daysLate * FINE_PER_DAY) : 0;
+    }
+
+    // Fines accrued on every loan overdue as of asOf, walked in parallel by FineAccrual; the result
+    // replaces getFineLedger() when complete. Circulation goes on meanwhile (read lock only), and
+    // returns during or after the run take their fine off the ledger.
+    public FineLedger accrueFines(LocalDate asOf) {
+        int day = (int) asOf.toEpochDay();
+        synchronized (accrualLock) {
+            long t0 = System.nanoTime();
+            int[] ids;
+            structure.readLock().lock();
+            try {
+                ids = dueIndex.dueBetween(Integer.MIN_VALUE + 1, day - 1);
+            } finally {
+                structure.readLock().unlock();
+            }
+            // Loans that end or start after the copy are settled per book under its stripe: a return
+            // before accrueLoan leaves nothing to accrue, a new loan is not overdue yet
+            Arrays.parallelSort(ids);
+            FineLedger ledger = new FineLedger(asOf, ids);
+            accruingLedger = ledger;
+            try {
+                FineAccrual.accrue(this, ledger, ids, day);
+                ledger.setElapsedNanos(System.nanoTime() - t0);
+                fineLedger = ledger; // publish before dropping accruingLedger, so no return slips between
+                return ledger;
+            } finally {
+                accruingLedger = null;
+            }
+        }
+    }
+
+    // One fork/join leaf of an accrual run. The read lock is held for these loans only, so a writer
+    // waits for at most one leaf (FineAccrual.LEAF_LOANS loans) instead of the whole run.
+    void accrueLoans(FineLedger ledger, int[] ids, int from, int to, int day) {
+        structure.readLock().lock();
+        try {
+            for (int i = from; i < to; i++) accrueLoan(ledger, i, ids[i], day);
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // One loan (caller holds the read lock; the book may have been removed since the ids were
+    // copied); under the book's stripe, so a return is either entirely before it (nothing accrued)
+    // or after it (the return closes the entry)
+    private void accrueLoan(FineLedger ledger, int pos, int bookId, int day) {
+        Book b = books.get(bookId);
+        if (b == null) return;
+        ReentrantLock stripe = loanLock(bookId);
+        stripe.lock();
+        try {
+            if (b.isAvailable()) return;
+            ledger.accrue(pos, b.getBorrowerUsername(), fineFor(b.getDueDay(), day));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Null until the first accrual run has finished
+    public FineLedger getFineLedger() { return fineLedger; }
+
+    // ---------- Loan history ----------
+    // Null when the history is off (-Dlibrary.history=false) or could not be opened
+    public LoanHistory getLoanHistory() { return history; }
+
     // ---------- Stats ----------
-    public int totalBooks() { return books.size(); }
-    public int totalBorrowed() {
-        int c = 0;
-        for (Book b : books) if (!b.isAvailable()) c++;
-        return c;
+    public int totalBooks() {
+        structure.readLock().lock();
+        try { return books.size(); } finally { structure.readLock().unlock(); }
+    }
+    public int totalBorrowed() { return borrowedCount.get(); }
+    public int totalUsers() {
+        structure.readLock().lock();
+        try { return users.size(); } finally { structure.readLock().unlock(); }
     }
-    public int totalUsers() { return users.size(); }
 
     // ---------- Categories ----------
+    private static class CategoryCount {
+        final String name; // spelling of the first book seen with this category
+        int books;
+        CategoryCount(String name) { this.name = name; }
+    }
+
+    // Callers hold the write lock (or are still loading). Every way a book enters the catalog passes
+    // through here, so this is also where its author and category switch to the shared instances.
+    private void countIn(Book b) {
+        b.setAuthor(authorNames.canonical(b.getAuthor()));
+        b.setCategory(categoryNames.canonical(b.getCategory()));
+        countCategory(b.getCategory());
+        if (!b.isAvailable()) {
+            borrowedCount.incrementAndGet();
+            indexLoan(b);
+        }
+    }
+
+    private void countOut(Book b) {
+        uncountCategory(b.getCategory());
+        if (!b.isAvailable()) {
+            borrowedCount.decrementAndGet();
+            unindexLoan(b);
+        }
+    }
+
+    private void countCategory(String category) {
+        String c = category == null ? "General" : category;
+        String key = foldCase(c);
+        CategoryCount cc = categories.get(key);
+        if (cc == null) categories.put(key, cc = new CategoryCount(c));
+        cc.books++;
+    }
+
+    private void uncountCategory(String category) {
+        String key = foldCase(category == null ? "General" : category);
+        CategoryCount cc = categories.get(key);
+        if (cc != null && --cc.books == 0) categories.remove(key);
+    }
+
+    // "All" first, then each category once (case-insensitively) in the order it first appeared
     public ArrayList<String> getAllCategories() {
-        ArrayList<String> cats = new ArrayList<String>();
-        cats.add("All");
-        for (Book b : books) {
-            String c = b.getCategory() == null ? "General" : b.getCategory();
-            boolean found = false;
-            for (String s : cats) if (s.equalsIgnoreCase(c)) { found = true; break; }
-            if (!found) cats.add(c);
-        }
-        return cats;
+        structure.readLock().lock();
+        try {
+            ArrayList<String> cats = new ArrayList<String>(categories.size() + 1);
+            cats.add("All");
+            String all = foldCase("All");
+            for (Map.Entry<String, CategoryCount> e : categories.entrySet()) {
+                if (!e.getKey().equals(all)) cats.add(e.getValue().name);
+            }
+            return cats;
+        } finally {
+            structure.readLock().unlock();
+        }
     }
 }
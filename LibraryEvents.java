@@ -0,0 +1,69 @@
+// Application events for Java Flight Recorder, so a recording lines up desk operations (mutations,
+// searches, persistence writes, table refreshes) with GC pauses, I/O and lock contention. The events
+// themselves live in jfr/ and need JDK 11+; on an older runtime, or with -Dlibrary.jfr=false, every
+// begin returns null and every end is a no-op. Begin methods return null too while no recording has
+// the event enabled, so the calls cost no allocation outside a recording.
+public final class LibraryEvents {
+    // Implemented by LibraryJfrRecorder (jfr/, compiled for Java 11)
+    interface Recorder {
+        Object beginMutation();
+        void endMutation(Object event, String operation, int bookId, int count, boolean applied);
+        Object beginSearch();
+        void endSearch(Object event, String searchBy, String categoryFilter, int queryLength, int fromId, int hits);
+        Object beginPersistence();
+        void endPersistence(Object event, String kind, long bytes);
+        Object beginTableRefresh();
+        void endTableRefresh(Object event, int queryLength, int rows, boolean firstPage, boolean superseded);
+    }
+
+    private static final Recorder RECORDER = load();
+
+    private LibraryEvents() { }
+
+    private static Recorder load() {
+        if (!Boolean.parseBoolean(System.getProperty("library.jfr", "true"))) return null;
+        try {
+            return (Recorder) Class.forName("LibraryJfrRecorder").newInstance();
+        } catch (Throwable t) {
+            return null; // Java 8, or the jfr classes are not on the classpath
+        }
+    }
+
+    public static boolean available() { return RECORDER != null; }
+
+    // ---------- Mutations: add/update/remove book, add user, borrow, return, batches, import ----------
+    static Object beginMutation() {
+        return RECORDER == null ? null : RECORDER.beginMutation();
+    }
+
+    static void mutation(Object event, String operation, int bookId, int count, boolean applied) {
+        if (event != null) RECORDER.endMutation(event, operation, bookId, count, applied);
+    }
+
+    // ---------- Searches ----------
+    static Object beginSearch() {
+        return RECORDER == null ? null : RECORDER.beginSearch();
+    }
+
+    static void search(Object event, String searchBy, String categoryFilter, String query, int fromId, int hits) {
+        if (event != null) RECORDER.endSearch(event, searchBy, categoryFilter, query == null ? 0 : query.trim().length(), fromId, hits);
+    }
+
+    // ---------- Persistence writes: snapshots and journal syncs ----------
+    static Object beginPersistence() {
+        return RECORDER == null ? null : RECORDER.beginPersistence();
+    }
+
+    static void persistence(Object event, String kind, long bytes) {
+        if (event != null) RECORDER.endPersistence(event, kind, bytes);
+    }
+
+    // ---------- GUI table refreshes, from the request to the rows being on screen ----------
+    static Object beginTableRefresh() {
+        return RECORDER == null ? null : RECORDER.beginTableRefresh();
+    }
+
+    static void tableRefresh(Object event, String query, int rows, boolean firstPage, boolean superseded) {
+        if (event != null) RECORDER.endTableRefresh(event, query == null ? 0 : query.length(), rows, firstPage, superseded);
+    }
+}
@@ -4,23 +4,62 @@ import java.awt.*;
 import java.awt.event.*;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class LibraryGUI extends JFrame {
     private Library library;
     private User currentUser;
 
     private JTable bookTable;
-    private DefaultTableModel tableModel;
+    private BookTableModel tableModel;
 
     private JTextField searchField;
     private JComboBox searchByBox;
     private JComboBox categoryBox;
     private JLabel userLabel;
     private JLabel statsLabel;
-    private JButton addBtn, updateBtn, deleteBtn, borrowBtn, returnBtn, refreshBtn, logoutBtn, addUserBtn, themeToggleBtn;
+    private JButton addBtn, updateBtn, deleteBtn, importBtn, exportBtn, borrowBtn, returnBtn, refreshBtn, logoutBtn, addUserBtn, themeToggleBtn;
 
     private boolean darkMode = false;
 
+    // Live search: keystrokes restart the debounce timer, the query runs on searchExecutor, and only
+    // the first page is fetched; further pages are pulled with the continuation token as the table is
+    // scrolled towards its end. A newer query cancels the running one and bumps the generation so
+    // pages still in flight for the old one are dropped.
+    private static final int SEARCH_DEBOUNCE_MS = 200;
+    private static final int SEARCH_PAGE = 5000;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "library-search");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private Future<?> pendingSearch;
+    private int searchGeneration; // EDT only
+    private String searchQuery, searchBy, searchCategory; // the query being paged (EDT only)
+    private String searchCursor;                           // token of the next page, null when complete
+    private boolean fetchingPage;
+    private Timer searchDebounce;
+
+    // Hourly reminder sweep (from the due-date index, on its own thread): admins see how many loans fall
+    // due soon, and the current user is told about their own due and overdue books once a day.
+    // updateStats counts the current user's due and overdue books from their own few loans
+    private ReminderSweeper reminders;
+    private int sweepDueSoon = -1;  // loans due within DEFAULT_DAYS_AHEAD days at the last sweep
+    private String remindedKey;     // username and day of the last reminder shown
+    private FineAccrual fines; // nightly; updateStats reads library.getFineLedger()
+
+    // Optional dashboard section (admins): per-operation rate and latency since the previous refresh
+    private static final int METRICS_REFRESH_MS = 2000;
+    private JCheckBox liveMetricsBox;
+    private Timer metricsTimer;
+    private LatencyHistogram.Snapshot[] lastMetrics;
+
     public LibraryGUI() {
         // try to set Nimbus or fallback
         try {
@@ -32,18 +71,12 @@ public class LibraryGUI extends JFrame {
             }
         } catch (Exception e) { /* ignore */ }
 
+        IconCache.preloadAsync(BUTTON_ICONS, BUTTON_ICON_SIZE, BUTTON_ICON_SIZE); // decodes while the library loads
+        LibraryMetrics.registerMBean();
         library = Library.load();
+        library.enableBackgroundPersistence(Long.getLong("library.flushMillis", PersistenceScheduler.DEFAULT_MAX_LATENCY_MILLIS));
 
-        // Seed defaults if fresh install (no users)
-        if (library.getUsers().isEmpty()) {
-            library.addUser("admin", "admin123", "ADMIN");
-            library.addUser("user1", "1234", "USER");
-            library.addBook("Clean Code", "Robert C. Martin", "Programming");
-            library.addBook("Effective Java", "Joshua Bloch", "Programming");
-            library.addBook("Head First Design Patterns", "Eric Freeman", "Programming");
-            library.addBook("The Alchemist", "Paulo Coelho", "Fiction");
-            library.save();
-        }
+        library.seedDefaultsIfEmpty();
 
         loginDialog(); // sets currentUser
 
@@ -56,8 +89,40 @@ public class LibraryGUI extends JFrame {
         refreshCategories();
         refreshTable("");
 
+        reminders = new ReminderSweeper(library, ReminderSweeper.DEFAULT_DAYS_AHEAD, new ReminderSweeper.Listener() {
+            public void remind(final LocalDate today, final List<Book> soon, final List<Book> late) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        sweepDueSoon = soon.size();
+                        updateStats();
+                        showReminders(today, soon, late);
+                    }
+                });
+            }
+        });
+        reminders.start(60);
+
+        fines = new FineAccrual(library, new FineAccrual.Listener() {
+            public void accrued(FineLedger ledger) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() { updateStats(); }
+                });
+            }
+        });
+        fines.start();
+
+        // row colours depend on today's date; recolour once when it changes
+        Timer dayRollover = new Timer(60000, new ActionListener() {
+            public void actionPerformed(ActionEvent e) { tableModel.refreshRowStates(); }
+        });
+        dayRollover.start();
+
         addWindowListener(new WindowAdapter() {
-            public void windowClosing(WindowEvent e) { library.save(); }
+            public void windowClosing(WindowEvent e) {
+                reminders.stop();
+                fines.stop();
+                library.close();
+            }
         });
     }
 
@@ -103,10 +168,10 @@ public class LibraryGUI extends JFrame {
         String[] searchOptions = new String[] {"All", "Title", "Author", "Category", "ID"};
         searchByBox = new JComboBox(searchOptions);
         categoryBox = new JComboBox();
-        JButton searchBtn = new JButton(loadIcon("icons/search.png", 18, 18));
-        refreshBtn = new JButton(loadIcon("icons/refresh.png", 18, 18));
-        logoutBtn = new JButton(loadIcon("icons/logout.png", 18, 18));
-        addUserBtn = new JButton(loadIcon("icons/user-add.png", 18, 18));
+        JButton searchBtn = new JButton(loadIcon("icons/search.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        refreshBtn = new JButton(loadIcon("icons/refresh.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        logoutBtn = new JButton(loadIcon("icons/logout.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        addUserBtn = new JButton(loadIcon("icons/user-add.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
         themeToggleBtn = new JButton("Toggle Theme");
 
         searchPanel.add(new JLabel("Search by:"));
@@ -123,16 +188,17 @@ public class LibraryGUI extends JFrame {
         top.add(searchPanel, BorderLayout.EAST);
 
         // Center table
-        String[] cols = {"ID", "Title", "Author", "Category", "Status", "Borrower", "Borrow Date", "Due Date"};
-        tableModel = new DefaultTableModel(cols, 0) {
-            public boolean isCellEditable(int r, int c) { return false; }
-        };
+        tableModel = new BookTableModel();
         bookTable = new JTable(tableModel);
         bookTable.setRowHeight(30);
         bookTable.getTableHeader().setFont(new Font("SansSerif", Font.BOLD, 13));
         bookTable.setDefaultRenderer(Object.class, new AvailabilityRenderer());
 
         JScrollPane scroll = new JScrollPane(bookTable);
+        final JScrollBar tableBar = scroll.getVerticalScrollBar();
+        tableBar.addAdjustmentListener(new AdjustmentListener() {
+            public void adjustmentValueChanged(AdjustmentEvent e) { maybeFetchMore(tableBar); }
+        });
 
         // Right dashboard
         JPanel right = new JPanel();
@@ -143,21 +209,38 @@ public class LibraryGUI extends JFrame {
         statsLabel = new JLabel();
         statsLabel.setFont(new Font("SansSerif", Font.PLAIN, 13));
         statsLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        liveMetricsBox = new JCheckBox("Live performance");
+        liveMetricsBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+        metricsTimer = new Timer(METRICS_REFRESH_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) { updateStats(); }
+        });
+        liveMetricsBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                lastMetrics = LibraryMetrics.snapshotAll();
+                if (liveMetricsBox.isSelected()) metricsTimer.start();
+                else metricsTimer.stop();
+                updateStats();
+            }
+        });
         updateStats();
 
         right.add(Box.createRigidArea(new Dimension(0,10)));
         right.add(statsLabel);
         right.add(Box.createVerticalGlue());
+        right.add(liveMetricsBox);
 
         // Bottom buttons
-        JPanel bottom = new JPanel(new GridLayout(2, 4, 10, 10));
-        addBtn = new JButton("Add Book", loadIcon("icons/add.png", 18, 18));
-        updateBtn = new JButton("Update Book", loadIcon("icons/edit.png", 18, 18));
-        deleteBtn = new JButton("Delete Book", loadIcon("icons/delete.png", 18, 18));
-        borrowBtn = new JButton("Borrow", loadIcon("icons/borrow.png", 18, 18));
-        returnBtn = new JButton("Return", loadIcon("icons/return.png", 18, 18));
-        JButton saveBtn = new JButton("Save", loadIcon("icons/save.png", 18, 18));
+        JPanel bottom = new JPanel(new GridLayout(2, 5, 10, 10));
+        addBtn = new JButton("Add Book", loadIcon("icons/add.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        updateBtn = new JButton("Update Book", loadIcon("icons/edit.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        deleteBtn = new JButton("Delete Book", loadIcon("icons/delete.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        borrowBtn = new JButton("Borrow", loadIcon("icons/borrow.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        returnBtn = new JButton("Return", loadIcon("icons/return.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
+        JButton saveBtn = new JButton("Save", loadIcon("icons/save.png", BUTTON_ICON_SIZE, BUTTON_ICON_SIZE));
         JButton statsBtn = new JButton("Refresh Stats");
+        importBtn = new JButton("Import CSV");
+        exportBtn = new JButton("Export");
+        JButton historyBtn = new JButton("History");
 
         bottom.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
         bottom.add(addBtn);
@@ -167,6 +250,9 @@ public class LibraryGUI extends JFrame {
         bottom.add(returnBtn);
         bottom.add(saveBtn);
         bottom.add(statsBtn);
+        bottom.add(importBtn);
+        bottom.add(exportBtn);
+        bottom.add(historyBtn);
 
         // Main layout
         JPanel centerWithRight = new JPanel(new BorderLayout());
@@ -181,6 +267,21 @@ public class LibraryGUI extends JFrame {
         setAdminControls(currentUser.isAdmin());
 
         // Actions
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) { refreshTable(searchField.getText().trim()); }
+        });
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+        });
+        ActionListener filterChanged = new ActionListener() {
+            public void actionPerformed(ActionEvent e) { searchDebounce.restart(); }
+        };
+        searchByBox.addActionListener(filterChanged);
+        categoryBox.addActionListener(filterChanged);
+
         searchBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 refreshTable(searchField.getText().trim());
@@ -194,7 +295,6 @@ public class LibraryGUI extends JFrame {
         });
         logoutBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                library.save();
                 loginDialog();
                 userLabel.setText("Logged in as: " + currentUser.getUsername() + " (" + currentUser.getRole() + ")");
                 setAdminControls(currentUser.isAdmin());
@@ -220,13 +320,16 @@ public class LibraryGUI extends JFrame {
         returnBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { returnSelectedBook(); } });
         saveBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { library.save(); JOptionPane.showMessageDialog(LibraryGUI.this, "Saved!"); updateStats(); } });
         statsBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { updateStats(); } });
+        importBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { importCatalogDialog(); } });
+        exportBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { exportDialog(); } });
+        historyBtn.addActionListener(new ActionListener() { public void actionPerformed(ActionEvent e) { historyDialog(); } });
 
         // double-click to view details
         bookTable.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) {
                     int row = bookTable.getSelectedRow();
-                    if (row != -1) showBookDetails((Integer) tableModel.getValueAt(row, 0));
+                    if (row != -1) showBookDetails(tableModel.getBookAt(row).getBookId());
                 }
             }
         });
@@ -236,7 +339,14 @@ public class LibraryGUI extends JFrame {
         addBtn.setEnabled(isAdmin);
         updateBtn.setEnabled(isAdmin);
         deleteBtn.setEnabled(isAdmin);
+        importBtn.setEnabled(isAdmin);
+        exportBtn.setEnabled(isAdmin); // loans carry borrower usernames
         addUserBtn.setEnabled(isAdmin);
+        liveMetricsBox.setVisible(isAdmin);
+        if (!isAdmin && liveMetricsBox.isSelected()) {
+            liveMetricsBox.setSelected(false);
+            metricsTimer.stop();
+        }
     }
 
     private void updateTheme() {
@@ -254,24 +364,72 @@ public class LibraryGUI extends JFrame {
     }
 
     // ---------- Table Refresh ----------
-    private void refreshTable(String query) {
-        tableModel.setRowCount(0);
-        String searchBy = (String) searchByBox.getSelectedItem();
-        String category = (String) categoryBox.getSelectedItem();
-        List<Book> list = library.searchBooks(query, searchBy, category);
-        for (Book b : list) {
-            tableModel.addRow(new Object[] {
-                b.getBookId(),
-                b.getTitle(),
-                b.getAuthor(),
-                b.getCategory(),
-                b.isAvailable() ? "Available" : "Borrowed",
-                b.getBorrowerUsername() == null ? "-" : b.getBorrowerUsername(),
-                b.getBorrowDate() == null ? "-" : b.getBorrowDate(),
-                b.getDueDate() == null ? "-" : b.getDueDate()
-            });
-        }
-        updateStats();
+    // Runs the search off the EDT; the old rows stay until the first page of the new result arrives
+    private void refreshTable(final String query) {
+        if (searchDebounce != null) searchDebounce.stop();
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        searchGeneration++;
+        searchQuery = query;
+        searchBy = (String) searchByBox.getSelectedItem();
+        searchCategory = (String) categoryBox.getSelectedItem();
+        fetchPage(null);
+    }
+
+    // Called from the scroll bar: pulls the next page once the last rows come into view
+    private void maybeFetchMore(JScrollBar bar) {
+        if (searchCursor == null || fetchingPage) return;
+        if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - bar.getVisibleAmount()) fetchPage(searchCursor);
+    }
+
+    private void fetchPage(final String token) {
+        final int generation = searchGeneration;
+        final String query = searchQuery, by = searchBy, category = searchCategory;
+        fetchingPage = true;
+        final Object event = LibraryEvents.beginTableRefresh();
+        pendingSearch = searchExecutor.submit(new Runnable() {
+            public void run() {
+                try {
+                    SearchPage page = library.searchPage(query, by, category, SEARCH_PAGE, token);
+                    publishPage(generation, page, token == null, query, event);
+                } catch (CancellationException superseded) {
+                    // a newer query took over
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                    pageFailed(generation, ex, token == null, query, event);
+                }
+            }
+        });
+    }
+
+    // Lets the next scroll or search try again; a superseded request fails quietly
+    private void pageFailed(final int generation, final RuntimeException error, final boolean first, final String query, final Object event) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                boolean superseded = generation != searchGeneration;
+                LibraryEvents.tableRefresh(event, query, 0, first, superseded);
+                if (superseded) return;
+                fetchingPage = false;
+                JOptionPane.showMessageDialog(LibraryGUI.this, "Search failed: " + error.getMessage());
+            }
+        });
+    }
+
+    // event (may be null) is the JFR table refresh begun when the page was requested
+    private void publishPage(final int generation, final SearchPage page, final boolean first, final String query, final Object event) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (generation != searchGeneration) { // superseded
+                    LibraryEvents.tableRefresh(event, query, page.books.size(), first, true);
+                    return;
+                }
+                if (first) tableModel.setBooks(page.books); // one structural change; cells are read lazily
+                else tableModel.appendBooks(page.books);
+                searchCursor = page.nextToken;
+                fetchingPage = false;
+                LibraryEvents.tableRefresh(event, query, page.books.size(), first, false);
+                if (first) updateStats();
+            }
+        });
     }
 
     // ---------- Dialogs & Actions ----------
@@ -304,8 +462,12 @@ public class LibraryGUI extends JFrame {
                 JOptionPane.showMessageDialog(this, "Username already exists.");
                 return;
             }
-            library.addUser(u, p, r);
-            library.save();
+            try {
+                library.addUser(u, p, r);
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage());
+                return;
+            }
             JOptionPane.showMessageDialog(this, "User added.");
             refreshCategories();
         }
@@ -326,8 +488,12 @@ public class LibraryGUI extends JFrame {
                 JOptionPane.showMessageDialog(this, "Title and Author required.");
                 return;
             }
-            library.addBook(t, a, c.isEmpty() ? "General" : c);
-            library.save();
+            try {
+                library.addBook(t, a, c.isEmpty() ? "General" : c);
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage());
+                return;
+            }
             refreshCategories();
             refreshTable(searchField.getText().trim());
         }
@@ -337,7 +503,7 @@ public class LibraryGUI extends JFrame {
         if (!currentUser.isAdmin()) return;
         int row = bookTable.getSelectedRow();
         if (row == -1) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
-        int id = (Integer) tableModel.getValueAt(row, 0);
+        int id = tableModel.getBookAt(row).getBookId();
         Book b = library.getBookById(id);
         if (b == null) { JOptionPane.showMessageDialog(this, "Book not found."); return; }
 
@@ -350,10 +516,12 @@ public class LibraryGUI extends JFrame {
             String t = titleField.getText().trim();
             String a = authorField.getText().trim();
             String c = categoryField.getText().trim();
-            if (!t.isEmpty()) b.setTitle(t);
-            if (!a.isEmpty()) b.setAuthor(a);
-            if (!c.isEmpty()) b.setCategory(c);
-            library.save();
+            try {
+                library.updateBook(id, t, a, c);
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage());
+                return;
+            }
             refreshCategories();
             refreshTable(searchField.getText().trim());
         }
@@ -363,37 +531,185 @@ public class LibraryGUI extends JFrame {
         if (!currentUser.isAdmin()) return;
         int row = bookTable.getSelectedRow();
         if (row == -1) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
-        int id = (Integer) tableModel.getValueAt(row, 0);
+        int id = tableModel.getBookAt(row).getBookId();
         boolean ok = library.removeBook(id);
         if (!ok) {
             JOptionPane.showMessageDialog(this, "Cannot delete a borrowed book.");
         } else {
-            library.save();
             refreshCategories();
             refreshTable(searchField.getText().trim());
         }
     }
 
+    // Runs the import on its own thread; progress (bytes read, rows/sec) is posted back to the EDT
+    private void importCatalogDialog() {
+        if (!currentUser.isAdmin()) return;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV / TSV files", "csv", "tsv", "txt"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        final java.nio.file.Path file = chooser.getSelectedFile().toPath();
+        final CatalogImporter importer = new CatalogImporter(library);
+        final ProgressMonitor monitor = new ProgressMonitor(this, "Importing " + file.getFileName(), "", 0, 1000);
+        monitor.setMillisToDecideToPopup(200);
+        importBtn.setEnabled(false);
+
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                CatalogImporter.Result result = null;
+                Exception failure = null;
+                try {
+                    result = importer.importFile(file, new CatalogImporter.ProgressListener() {
+                        public void progress(final CatalogImporter.Result r) {
+                            SwingUtilities.invokeLater(new Runnable() {
+                                public void run() {
+                                    if (monitor.isCanceled()) importer.cancel();
+                                    int done = r.totalBytes == 0 ? 1000 : (int) Math.min(999, r.bytesRead * 1000 / r.totalBytes);
+                                    monitor.setProgress(done);
+                                    monitor.setNote(String.format("%,d rows (%,.0f rows/sec)", r.rowsRead, r.rowsPerSecond()));
+                                }
+                            });
+                        }
+                    });
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    failure = ex;
+                }
+                final CatalogImporter.Result done = result;
+                final Exception error = failure;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        monitor.close();
+                        importBtn.setEnabled(currentUser.isAdmin());
+                        if (error != null) {
+                            JOptionPane.showMessageDialog(LibraryGUI.this, "Import failed: " + error.getMessage());
+                            return;
+                        }
+                        JOptionPane.showMessageDialog(LibraryGUI.this, done.toString());
+                        refreshCategories();
+                        refreshTable(searchField.getText().trim());
+                    }
+                });
+            }
+        }, "library-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Catalog or active loans; the file name picks CSV or JSON Lines (.jsonl) and gzip (.gz)
+    private void exportDialog() {
+        if (!currentUser.isAdmin()) return;
+        Object[] options = {"Catalog", "Active loans", "Cancel"};
+        final int which = JOptionPane.showOptionDialog(this, "What should be exported?", "Export",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (which != 0 && which != 1) return;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File(which == 0 ? "catalog.csv" : "loans.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        final java.nio.file.Path file = chooser.getSelectedFile().toPath();
+
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                String msg;
+                try {
+                    int rows = new CatalogExporter(library).export(file, which == 1);
+                    msg = "Exported " + rows + " rows to " + file.getFileName();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    msg = "Export failed: " + ex.getMessage();
+                }
+                final String done = msg;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() { JOptionPane.showMessageDialog(LibraryGUI.this, done); }
+                });
+            }
+        }, "library-export");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Users see their own borrows and returns; admins get the most borrowed titles and loans per
+    // category, or one user's history. The segments are scanned off the EDT.
+    private static final int HISTORY_TOP = 10, HISTORY_EVENTS = 200;
+
+    private void historyDialog() {
+        final LoanHistory history = library.getLoanHistory();
+        if (history == null) { JOptionPane.showMessageDialog(this, "Loan history is not being recorded."); return; }
+        String who = currentUser.getUsername();
+        if (currentUser.isAdmin()) {
+            who = JOptionPane.showInputDialog(this, "Username (leave empty for the most borrowed titles and categories):", "");
+            if (who == null) return;
+            who = who.trim();
+        }
+        final String username = who;
+
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                final StringBuilder sb = new StringBuilder();
+                try {
+                    if (username.isEmpty()) {
+                        sb.append("Most borrowed titles\n");
+                        for (LoanHistory.Count c : history.topTitles(HISTORY_TOP, null)) {
+                            sb.append(String.format("%6d  #%d %s%n", c.loans, c.bookId, c.name));
+                        }
+                        sb.append("\nLoans by category\n");
+                        for (LoanHistory.Count c : history.loansByCategory(null)) {
+                            sb.append(String.format("%6d  %s%n", c.loans, c.name));
+                        }
+                    } else {
+                        List<LoanHistory.Event> events = history.userHistory(username, HISTORY_EVENTS, null);
+                        sb.append("History of ").append(username).append(" (latest ").append(HISTORY_EVENTS).append(")\n");
+                        if (events.isEmpty()) sb.append("No borrows or returns recorded.\n");
+                        for (int i = events.size() - 1; i >= 0; i--) {
+                            LoanHistory.Event ev = events.get(i);
+                            sb.append(Book.formatDay(ev.day)).append(ev.isBorrow() ? "  borrowed  #" : "  returned  #")
+                              .append(ev.bookId).append(' ').append(ev.title);
+                            if (ev.isBorrow()) sb.append(" (due ").append(Book.formatDay(ev.amount)).append(')');
+                            else if (ev.amount > 0) sb.append(" (fine ₹").append(ev.amount).append(')');
+                            sb.append('\n');
+                        }
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    sb.append("Could not read the loan history: ").append(ex.getMessage());
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        JTextArea text = new JTextArea(sb.toString(), 20, 60);
+                        text.setEditable(false);
+                        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+                        JOptionPane.showMessageDialog(LibraryGUI.this, new JScrollPane(text), "Loan History", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                });
+            }
+        }, "library-history-query");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Several selected rows go through as one all-or-nothing batch
     private void borrowSelectedBook() {
-        int row = bookTable.getSelectedRow();
-        if (row == -1) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
-        int id = (Integer) tableModel.getValueAt(row, 0);
-        String msg = library.borrowBook(currentUser, id);
+        int[] ids = selectedBookIds();
+        if (ids.length == 0) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
+        String msg = ids.length == 1 ? library.borrowBook(currentUser, ids[0]) : library.borrowBooks(currentUser, ids).describe();
         JOptionPane.showMessageDialog(this, msg);
-        library.save();
         refreshTable(searchField.getText().trim());
     }
 
     private void returnSelectedBook() {
-        int row = bookTable.getSelectedRow();
-        if (row == -1) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
-        int id = (Integer) tableModel.getValueAt(row, 0);
-        String msg = library.returnBook(currentUser, id);
+        int[] ids = selectedBookIds();
+        if (ids.length == 0) { JOptionPane.showMessageDialog(this, "Select a book first."); return; }
+        String msg = ids.length == 1 ? library.returnBook(currentUser, ids[0]) : library.returnBooks(currentUser, ids).describe();
         JOptionPane.showMessageDialog(this, msg);
-        library.save();
         refreshTable(searchField.getText().trim());
     }
 
+    private int[] selectedBookIds() {
+        int[] rows = bookTable.getSelectedRows();
+        int[] ids = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) ids[i] = tableModel.getBookAt(rows[i]).getBookId();
+        return ids;
+    }
+
     private void showBookDetails(int id) {
         Book b = library.getBookById(id);
         if (b == null) return;
@@ -410,43 +726,31 @@ public class LibraryGUI extends JFrame {
     }
 
     // ---------- Renderer for color-coding ----------
+    // Colours come from the row state the model precomputed; nothing is parsed or allocated per paint
+    private static final Color AVAILABLE_BG = new Color(210, 255, 210); // light green
+    private static final Color BORROWED_BG = new Color(255, 230, 230);  // light red
+    private static final Color SELECTED_BG = new Color(173, 216, 230);  // selection blue
+    private static final Color OVERDUE_BG = new Color(255, 180, 180);
+    private static final Color NEAR_DUE_BG = new Color(255, 230, 180);
+    private static final int DUE_COLUMN = 7;
+
     private class AvailabilityRenderer extends DefaultTableCellRenderer {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
-            String status = (String) table.getValueAt(row, 4); // "Available" or "Borrowed"
-            if (!isSelected) {
-                if ("Available".equalsIgnoreCase(status)) {
-                    c.setBackground(new Color(210, 255, 210)); // light green
-                } else {
-                    c.setBackground(new Color(255, 230, 230)); // light red
-                }
-            } else {
-                c.setBackground(new Color(173, 216, 230)); // selection blue
-            }
-
-            // overdue highlight in Due Date column
-            if (column == 7) {
-                String due = (String) table.getValueAt(row, 7);
-                if (!"-".equals(due) && !isSelected) {
-                    try {
-                        java.time.LocalDate dueDate = java.time.LocalDate.parse(due);
-                        long days = java.time.temporal.ChronoUnit.DAYS.between(LocalDate.now(), dueDate);
-                        if (days < 0) {
-                            c.setBackground(new Color(255, 180, 180)); // overdue
-                        } else if (days <= 3) {
-                            c.setBackground(new Color(255, 230, 180)); // near due
-                        }
-                    } catch (Exception ex) {}
-                }
-            }
-
-            if (darkMode) {
-                c.setForeground(Color.WHITE);
+            byte state = tableModel.getRowState(row);
+            if (isSelected) {
+                c.setBackground(SELECTED_BG);
+            } else if (state == BookTableModel.AVAILABLE) {
+                c.setBackground(AVAILABLE_BG);
+            } else if (column == DUE_COLUMN && state == BookTableModel.OVERDUE) {
+                c.setBackground(OVERDUE_BG);
+            } else if (column == DUE_COLUMN && state == BookTableModel.NEAR_DUE) {
+                c.setBackground(NEAR_DUE_BG);
             } else {
-                c.setForeground(Color.BLACK);
+                c.setBackground(BORROWED_BG);
             }
-
+            c.setForeground(darkMode ? Color.WHITE : Color.BLACK);
             return c;
         }
     }
@@ -465,25 +769,97 @@ public class LibraryGUI extends JFrame {
         s += "<b>Total Users:</b> " + library.totalUsers() + "<br>";
         s += "<b>Your borrowed:</b> " + currentUser.borrowedCount() + "<br>";
         s += "<b>Borrow limit:</b> " + User.BORROW_LIMIT;
+        if (currentUser.isAdmin()) {
+            s += "<br><b>Overdue loans:</b> " + library.overdueCount();
+            if (sweepDueSoon >= 0) s += "<br><b>Loans due within " + ReminderSweeper.DEFAULT_DAYS_AHEAD + " days:</b> " + sweepDueSoon;
+        }
+        int[] due = countMine();
+        int soon = due[0], late = due[1];
+        if (soon > 0) s += "<br><b>Due within " + ReminderSweeper.DEFAULT_DAYS_AHEAD + " days:</b> " + soon;
+        if (late > 0) s += "<br><font color='red'><b>Overdue:</b> " + late + "</font>";
+        FineLedger ledger = library.getFineLedger();
+        if (ledger != null) {
+            long mine = ledger.balance(currentUser.getUsername());
+            if (mine > 0) s += "<br><font color='red'><b>Accrued fines:</b> ₹" + mine + "</font>";
+            if (currentUser.isAdmin()) {
+                s += "<br><b>Outstanding fines:</b> ₹" + ledger.total() + " on " + ledger.loans() + " loans"
+                    + " (as of " + ledger.getAsOf() + ")";
+            }
+        }
+        if (liveMetricsBox != null && liveMetricsBox.isSelected()) s += metricsSection();
         s += "</body></html>";
         statsLabel.setText(s);
     }
 
+    // Rate and latency of each operation since the previous refresh
+    private String metricsSection() {
+        LatencyHistogram.Snapshot[] now = LibraryMetrics.snapshotAll();
+        String s = "<br><br><b>Performance</b>";
+        for (int i = 0; i < now.length; i++) {
+            LatencyHistogram.Snapshot d = lastMetrics == null ? now[i] : now[i].minus(lastMetrics[i]);
+            s += "<br><b>" + d.getName() + ":</b> ";
+            if (d.getCount() == 0) s += "idle";
+            else s += String.format("%.1f/s, p50 %s, p99 %s", d.getRatePerSecond(), micros(d.getP50Micros()), micros(d.getP99Micros()));
+        }
+        lastMetrics = now;
+        return s;
+    }
+
+    private static String micros(double us) {
+        return us < 1000 ? String.format("%.0f \u00b5s", us) : String.format("%.1f ms", us / 1000);
+    }
+
+    // {due within DEFAULT_DAYS_AHEAD days, overdue} among the current user's loans (at most BORROW_LIMIT)
+    // The current user's books from a sweep, at most once a day per user
+    private static final int REMINDER_LINES = 10;
+
+    private void showReminders(LocalDate today, List<Book> soon, List<Book> late) {
+        String user = currentUser.getUsername();
+        String key = user + '@' + today;
+        if (key.equals(remindedKey)) return;
+        StringBuilder sb = new StringBuilder();
+        int lines = reminderLines(sb, late, user, "Overdue", 0);
+        lines = reminderLines(sb, soon, user, "Due soon", lines);
+        if (lines == 0) return;
+        remindedKey = key;
+        if (lines > REMINDER_LINES) sb.append("\n... and ").append(lines - REMINDER_LINES).append(" more");
+        JOptionPane.showMessageDialog(this, sb.toString(), "Reminders", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // Appends one line per book of user (up to REMINDER_LINES in all); returns the running count
+    private static int reminderLines(StringBuilder sb, List<Book> books, String user, String label, int lines) {
+        for (Book b : books) {
+            if (!user.equals(b.getBorrowerUsername())) continue;
+            if (lines++ >= REMINDER_LINES) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(label).append(": ").append(b.getTitle()).append(" (due ").append(b.getDueDate()).append(')');
+        }
+        return lines;
+    }
+
+    private int[] countMine() {
+        java.util.ArrayList<Integer> ids;
+        synchronized (currentUser) { ids = new java.util.ArrayList<Integer>(currentUser.getBorrowedBookIds()); }
+        int today = (int) LocalDate.now().toEpochDay();
+        int[] counts = new int[2];
+        for (int id : ids) {
+            Book b = library.getBookById(id);
+            int due = b == null ? Book.NO_DATE : b.getDueDay();
+            if (due == Book.NO_DATE) continue;
+            if (due < today) counts[1]++;
+            else if (due <= today + ReminderSweeper.DEFAULT_DAYS_AHEAD) counts[0]++;
+        }
+        return counts;
+    }
+
     // ---------- Helper to load icons (optional) ----------
+    private static final String[] BUTTON_ICONS = {
+        "icons/search.png", "icons/refresh.png", "icons/logout.png", "icons/user-add.png", "icons/add.png",
+        "icons/edit.png", "icons/delete.png", "icons/borrow.png", "icons/return.png", "icons/save.png"
+    };
+    private static final int BUTTON_ICON_SIZE = 18;
+
     private ImageIcon loadIcon(String path, int w, int h) {
-        try {
-            java.net.URL url = getClass().getResource("/" + path);
-            if (url == null) {
-                // try file fallback
-                java.io.File f = new java.io.File(path);
-                if (f.exists()) url = f.toURI().toURL();
-            }
-            if (url != null) {
-                ImageIcon icon = new ImageIcon(url);
-                Image img = icon.getImage().getScaledInstance(w, h, Image.SCALE_SMOOTH);
-                return new ImageIcon(img);
-            }
-        } catch (Exception e) { /* ignore, return null below */ }
-        return null;
+        return IconCache.get(path, w, h);
     }
 }
@@ -0,0 +1,315 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead log of Library mutations, replayed on top of the last snapshot at startup.
+// Record layout: [int length][int crc32 of payload][payload], payload = [long seq][byte op][fields].
+// A torn or corrupt tail (crash mid-append) is cut off during replay. A checkpoint rotates the
+// active file to <name>.1 and deletes it once the snapshot is on disk, so appends never wait on it.
+public class LibraryJournal implements Closeable {
+    static final byte ADD_BOOK = 1, UPDATE_BOOK = 2, REMOVE_BOOK = 3, ADD_USER = 4, BORROW = 5, RETURN = 6;
+    static final byte LOAN = 7; // BORROW with epoch-day dates; BORROW (ISO strings) is only read back
+    static final byte LOAN_BATCH = 8, RETURN_BATCH = 9; // one record per batch: replayed whole or not at all
+    static final byte SET_PASSWORD = 10;
+
+    private final Path path;
+    private final Path rotated;
+    private FileChannel channel;
+    private long seq;      // last sequence number written
+    private int records;   // records since the last rotation
+    private long unsynced; // bytes appended since the last sync
+    private boolean failed; // a write failed: nothing is appended until rotate() starts a fresh file
+    private long lostThrough; // last seq whose record is not in the journal; 0 once a snapshot covers it
+
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(buf);
+    private final CRC32 crc = new CRC32();
+
+    private LibraryJournal(Path path, FileChannel channel, long seq, int records) {
+        this.path = path;
+        this.rotated = rotatedPath(path);
+        this.channel = channel;
+        this.seq = seq;
+        this.records = records;
+    }
+
+    private static Path rotatedPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".1");
+    }
+
+    // Applies every intact record newer than the library's snapshot (a rotated file left by an
+    // interrupted checkpoint first), then opens the active file for appending
+    static LibraryJournal openAndReplay(Path path, Library lib) throws IOException {
+        Path old = rotatedPath(path);
+        if (Files.exists(old)) replay(old, lib);
+        int[] count = new int[1];
+        long validEnd = replay(path, lib, count);
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.truncate(validEnd);
+        ch.position(validEnd);
+        return new LibraryJournal(path, ch, lib.getJournalSeq(), count[0]);
+    }
+
+    private static long replay(Path path, Library lib) throws IOException {
+        return replay(path, lib, new int[1]);
+    }
+
+    // Returns the length of the intact prefix; count[0] receives the number of intact records
+    private static long replay(Path path, Library lib, int[] count) throws IOException {
+        long lastSeq = lib.getJournalSeq();
+        long validEnd = 0;
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                CRC32 check = new CRC32();
+                while (true) {
+                    byte[] payload;
+                    int sum;
+                    try {
+                        int len = in.readInt();
+                        sum = in.readInt();
+                        if (len <= 0 || len > (1 << 24)) break;
+                        payload = new byte[len];
+                        in.readFully(payload);
+                    } catch (EOFException eof) {
+                        break; // clean end or torn tail
+                    }
+                    check.reset();
+                    check.update(payload, 0, payload.length);
+                    if ((int) check.getValue() != sum) break;
+
+                    DataInputStream rec = new DataInputStream(new ByteArrayInputStream(payload));
+                    long recSeq = rec.readLong();
+                    if (recSeq > lastSeq) {
+                        apply(lib, rec.readByte(), rec);
+                        lastSeq = recSeq;
+                    }
+                    validEnd += 8 + payload.length;
+                    count[0]++;
+                }
+            }
+        }
+        lib.setJournalSeq(lastSeq);
+        return validEnd;
+    }
+
+    private static void apply(Library lib, byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case ADD_BOOK: lib.restoreBook(in.readInt(), readStr(in), readStr(in), readStr(in)); break;
+            case UPDATE_BOOK: lib.updateBook(in.readInt(), readStr(in), readStr(in), readStr(in)); break;
+            case REMOVE_BOOK: lib.removeBook(in.readInt()); break;
+            case ADD_USER: lib.restoreUser(in.readInt(), readStr(in), readStr(in), readStr(in)); break;
+            case BORROW: lib.restoreBorrow(in.readInt(), readStr(in), Book.parseDay(readStr(in)), Book.parseDay(readStr(in))); break;
+            case LOAN: lib.restoreBorrow(in.readInt(), readStr(in), in.readInt(), in.readInt()); break;
+            case RETURN: lib.restoreReturn(in.readInt()); break;
+            case LOAN_BATCH:
+                for (int n = in.readInt(); n > 0; n--) lib.restoreBorrow(in.readInt(), readStr(in), in.readInt(), in.readInt());
+                break;
+            case RETURN_BATCH:
+                for (int n = in.readInt(); n > 0; n--) lib.restoreReturn(in.readInt());
+                break;
+            case SET_PASSWORD: lib.restorePassword(readStr(in), readStr(in)); break;
+            default: throw new IOException("Unknown journal record type " + op);
+        }
+    }
+
+    // ---------- Appends ----------
+    public synchronized void bookAdded(Book b) {
+        begin(ADD_BOOK);
+        bookFields(b);
+        commit();
+    }
+
+    public synchronized void bookUpdated(Book b) {
+        begin(UPDATE_BOOK);
+        bookFields(b);
+        commit();
+    }
+
+    public synchronized void bookRemoved(int bookId) {
+        begin(REMOVE_BOOK);
+        writeInt(bookId);
+        commit();
+    }
+
+    public synchronized void userAdded(User u) {
+        begin(ADD_USER);
+        writeInt(u.getUserId());
+        writeStr(u.getUsername());
+        writeStr(u.getPassword());
+        writeStr(u.getRole());
+        commit();
+    }
+
+    public synchronized void passwordChanged(User u) {
+        begin(SET_PASSWORD);
+        writeStr(u.getUsername());
+        writeStr(u.getPassword());
+        commit();
+    }
+
+    public synchronized void bookBorrowed(Book b) {
+        begin(LOAN);
+        loanFields(b);
+        commit();
+    }
+
+    public synchronized void bookReturned(int bookId) {
+        begin(RETURN);
+        writeInt(bookId);
+        commit();
+    }
+
+    public synchronized void booksBorrowed(Book[] loans) {
+        begin(LOAN_BATCH);
+        writeInt(loans.length);
+        for (Book b : loans) loanFields(b);
+        commit();
+    }
+
+    public synchronized void booksReturned(int[] bookIds) {
+        begin(RETURN_BATCH);
+        writeInt(bookIds.length);
+        for (int id : bookIds) writeInt(id);
+        commit();
+    }
+
+    private void loanFields(Book b) {
+        writeInt(b.getBookId());
+        writeStr(b.getBorrowerUsername());
+        writeInt(b.getBorrowDay());
+        writeInt(b.getDueDay());
+    }
+
+    private void bookFields(Book b) {
+        writeInt(b.getBookId());
+        writeStr(b.getTitle());
+        writeStr(b.getAuthor());
+        writeStr(b.getCategory());
+    }
+
+    private void begin(byte op) {
+        buf.reset();
+        try {
+            out.writeLong(++seq);
+            out.writeByte(op);
+        } catch (IOException e) { /* cannot happen on a byte array */ }
+    }
+
+    private void writeInt(int v) {
+        try { out.writeInt(v); } catch (IOException e) { /* cannot happen on a byte array */ }
+    }
+
+    // A string writeUTF cannot hold aborts the record before commit(), so nothing truncated is written
+    // (Library.checkText refuses such text before the mutation)
+    private void writeStr(String s) {
+        try {
+            out.writeBoolean(s != null);
+            if (s != null) out.writeUTF(s);
+        } catch (UTFDataFormatException e) {
+            throw new IllegalArgumentException("Text too long for the journal", e);
+        } catch (IOException e) { /* cannot happen on a byte array */ }
+    }
+
+    private static String readStr(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // After a failed write the record is cut off again where possible and the journal stops taking
+    // records, so replay (which ends at the first torn record) never drops anything written after
+    // it; Library sees lostRecords() and checkpoints, and the snapshot covers every mutation since
+    private void commit() {
+        if (failed) {
+            lostThrough = seq;
+            return;
+        }
+        byte[] payload = buf.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer bb = ByteBuffer.allocate(8 + payload.length);
+        bb.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long start = -1;
+        try {
+            start = channel.position();
+            while (bb.hasRemaining()) channel.write(bb);
+            records++;
+            unsynced += 8 + payload.length;
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+            lostThrough = seq;
+            try {
+                if (start >= 0) channel.truncate(start);
+            } catch (IOException again) {
+                again.printStackTrace(); // the torn bytes stay, but nothing follows them
+            }
+        }
+    }
+
+    // The active file took a failed write and is closed to appends until the next rotate()
+    public synchronized boolean failed() { return failed; }
+
+    // Some mutations are only in memory; true until a snapshot covering them is written
+    public synchronized boolean lostRecords() { return lostThrough != 0; }
+
+    // A snapshot holding everything up to seq is on disk
+    public synchronized void snapshotWritten(long seq) {
+        if (lostThrough <= seq) lostThrough = 0;
+    }
+
+    // ---------- Durability ----------
+    // Not synchronized: appends keep going while the fsync runs, and the next sync picks them up
+    public void sync() {
+        FileChannel ch;
+        long bytes;
+        synchronized (this) {
+            ch = channel;
+            bytes = unsynced;
+            unsynced = 0;
+        }
+        Object event = LibraryEvents.beginPersistence();
+        try {
+            ch.force(false);
+            LibraryEvents.persistence(event, "journalSync", bytes);
+        } catch (ClosedChannelException e) {
+            // rotated in the meantime; rotate() forced the old file before closing it
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Starts a fresh active file; everything up to lastSeq() is now in the rotated one
+    public synchronized void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        if (Files.exists(rotated)) {
+            // an earlier checkpoint failed before dropping it; keep both sets of records
+            try (FileChannel old = FileChannel.open(rotated, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                old.write(ByteBuffer.wrap(Files.readAllBytes(path)));
+                old.force(false);
+            }
+        } else {
+            Files.move(path, rotated, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        records = 0;
+        failed = false;
+    }
+
+    // Called once a snapshot covering the rotated records is safely on disk
+    public void dropRotated() throws IOException {
+        Files.deleteIfExists(rotated);
+    }
+
+    public synchronized long lastSeq() { return seq; }
+    public synchronized int records() { return records; }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
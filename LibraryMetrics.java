@@ -0,0 +1,58 @@
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+// Process-wide latency histograms for the Library operations worth watching at a busy desk. Library
+// brackets each one with start()/stop(); with -Dlibrary.metrics=false that costs a field read.
+public class LibraryMetrics implements LibraryMetricsMXBean {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("library.metrics", "true"));
+
+    public static final LatencyHistogram SEARCH = new LatencyHistogram("search");
+    public static final LatencyHistogram BORROW = new LatencyHistogram("borrow");
+    public static final LatencyHistogram RETURN = new LatencyHistogram("return");
+    public static final LatencyHistogram SAVE = new LatencyHistogram("save");
+    public static final LatencyHistogram LOAD = new LatencyHistogram("load");
+    private static final LatencyHistogram[] ALL = {SEARCH, BORROW, RETURN, SAVE, LOAD};
+
+    private static final String OBJECT_NAME = "library:type=Metrics";
+    private static boolean registered;
+
+    private LibraryMetrics() { }
+
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    static void stop(LatencyHistogram h, long startNanos) {
+        if (ENABLED) h.record(System.nanoTime() - startNanos);
+    }
+
+    // Every operation, in a fixed order (search, borrow, return, save, load)
+    public static LatencyHistogram.Snapshot[] snapshotAll() {
+        LatencyHistogram.Snapshot[] s = new LatencyHistogram.Snapshot[ALL.length];
+        for (int i = 0; i < ALL.length; i++) s[i] = ALL[i].snapshot();
+        return s;
+    }
+
+    // Publishes the MBean on the platform server; repeated calls are no-ops
+    public static synchronized void registerMBean() {
+        if (registered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new LibraryMetrics(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (Exception e) {
+            e.printStackTrace(); // metrics stay available in-process
+        }
+    }
+
+    // ---------- MXBean ----------
+    public LatencyHistogram.Snapshot getSearch() { return SEARCH.snapshot(); }
+    public LatencyHistogram.Snapshot getBorrow() { return BORROW.snapshot(); }
+    public LatencyHistogram.Snapshot getReturn() { return RETURN.snapshot(); }
+    public LatencyHistogram.Snapshot getSave() { return SAVE.snapshot(); }
+    public LatencyHistogram.Snapshot getLoad() { return LOAD.snapshot(); }
+    public boolean isEnabled() { return ENABLED; }
+
+    public void reset() {
+        for (LatencyHistogram h : ALL) h.reset();
+    }
+}
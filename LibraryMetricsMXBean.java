@@ -0,0 +1,12 @@
+// Management view of LibraryMetrics, registered as "library:type=Metrics" (jconsole, VisualVM, JMX
+// exporters). Each operation reads as one composite value: count, rate per second, mean, p50/p90/p99/
+// p99.9 and max in microseconds, all since startup or the last reset.
+public interface LibraryMetricsMXBean {
+    LatencyHistogram.Snapshot getSearch();
+    LatencyHistogram.Snapshot getBorrow();
+    LatencyHistogram.Snapshot getReturn();
+    LatencyHistogram.Snapshot getSave();
+    LatencyHistogram.Snapshot getLoad();
+    boolean isEnabled();
+    void reset();
+}
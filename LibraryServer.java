@@ -0,0 +1,412 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Headless JSON API over the shared in-memory Library, for kiosks and the web catalog (Main --server).
+//
+//   GET  /api/books?q=&by=&category=&limit=&cursor=   one page of search results plus the next cursor
+//   GET  /api/books/{id}                              book details
+//   POST /api/books/{id}/borrow                       borrow as the authenticated user
+//   POST /api/books/{id}/return                       return as the authenticated user
+//   POST /api/borrow?ids=1,2,3   /api/return?ids=...  a whole stack, all or nothing
+//   GET  /api/stats                                   dashboard figures
+//   GET  /api/history/top?k=&since=                   most borrowed titles (since = ISO date, optional)
+//   GET  /api/history/categories?since=               loans per category
+//   GET  /api/history/me?limit=&since=&user=          own borrows and returns (user= for admins)
+//
+// Borrow, return and the history endpoints need HTTP Basic credentials, checked with
+// User.checkPassword; the seeded demo accounts are refused while they keep their published passwords.
+// A book's borrower is only shown to that borrower and to admins. Each request runs on its own virtual thread when the JDK has them
+// (21+), otherwise on a fixed pool of platform threads.
+public class LibraryServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int MAX_PAGE = 1000;
+    private static final int DEFAULT_PAGE = 50;
+
+    static {
+        // the JDK server closes idle keep-alive connections beyond this (default 200), which clients
+        // then see as resets; read once when the first server is created, so set it before that
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "4096");
+        }
+    }
+
+    private final Library library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LibraryServer(Library library, int port) throws IOException {
+        this.library = library;
+        server = HttpServer.create(new InetSocketAddress(port), 4096);
+        executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException { dispatch(ex); }
+        });
+    }
+
+    public void start() { server.start(); }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Virtual threads are looked up reflectively so the code still builds for Java 8
+    static ExecutorService requestExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            int threads = Math.max(64, Runtime.getRuntime().availableProcessors() * 32);
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int n;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "library-http-" + (++n));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    // Loads the saved state and serves until the process is stopped; state is flushed on shutdown.
+    // The admin password comes from -Dlibrary.adminPassword (or LIBRARY_ADMIN_PASSWORD): required to
+    // create the admin in a fresh data directory, and it replaces the published default of an admin
+    // seeded by the desk. The desk's demo accounts are never created here.
+    public static void runHeadless(int port) throws IOException {
+        LibraryMetrics.registerMBean();
+        final Library library = Library.load();
+        library.enableBackgroundPersistence(Long.getLong("library.flushMillis", PersistenceScheduler.DEFAULT_MAX_LATENCY_MILLIS));
+        String password = System.getProperty("library.adminPassword", System.getenv("LIBRARY_ADMIN_PASSWORD"));
+        if (library.totalUsers() == 0) {
+            if (password == null || password.isEmpty()) {
+                System.err.println("No users yet: start the server with -Dlibrary.adminPassword=... (or LIBRARY_ADMIN_PASSWORD)"
+                    + " to create the admin account.");
+                library.close();
+                System.exit(2);
+            }
+            library.seedAdminIfEmpty(password);
+        }
+        User admin = library.findUserByUsername("admin");
+        if (admin != null && Library.hasDefaultPassword(admin) && password != null && library.changePassword("admin", password)) {
+            System.err.println("The admin account's default password was replaced by the configured one.");
+        }
+        for (String name : new String[] {"admin", "user1"}) {
+            User u = library.findUserByUsername(name);
+            if (u != null && Library.hasDefaultPassword(u)) {
+                System.err.println("WARNING: account '" + name + "' still has its published default password;"
+                    + " the API refuses it" + (u.isAdmin() ? " (set -Dlibrary.adminPassword to replace it)." : "."));
+            }
+        }
+        final LibraryServer server = new LibraryServer(library, port);
+        final FineAccrual fines = new FineAccrual(library, null);
+        fines.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                server.stop();
+                fines.stop();
+                library.close();
+            }
+        }, "library-shutdown"));
+        server.start();
+        System.out.println("Library API listening on port " + server.getPort());
+    }
+
+    // ---------- Routing ----------
+    private void dispatch(HttpExchange ex) throws IOException {
+        try {
+            String method = ex.getRequestMethod();
+            String[] parts = ex.getRequestURI().getPath().substring("/api/".length()).split("/");
+            if (parts.length == 1 && parts[0].equals("books")) {
+                if (!method.equals("GET")) { send(ex, 405, error("Use GET")); return; }
+                search(ex);
+            } else if (parts.length == 1 && (parts[0].equals("borrow") || parts[0].equals("return"))) {
+                if (!method.equals("POST")) { send(ex, 405, error("Use POST")); return; }
+                batch(ex, parts[0].equals("borrow"));
+            } else if (parts.length == 1 && parts[0].equals("stats")) {
+                if (!method.equals("GET")) { send(ex, 405, error("Use GET")); return; }
+                stats(ex);
+            } else if (parts.length == 2 && parts[0].equals("history")) {
+                if (!method.equals("GET")) { send(ex, 405, error("Use GET")); return; }
+                history(ex, parts[1]);
+            } else if (parts.length >= 2 && parts.length <= 3 && parts[0].equals("books")) {
+                int id;
+                try {
+                    id = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    send(ex, 404, error("No such book")); return;
+                }
+                if (parts.length == 2) {
+                    if (!method.equals("GET")) { send(ex, 405, error("Use GET")); return; }
+                    Book b = library.getBookById(id);
+                    if (b == null) send(ex, 404, error("Book not found."));
+                    else send(ex, 200, book(new StringBuilder(256), b, authenticate(ex)).toString());
+                } else if (parts[2].equals("borrow") || parts[2].equals("return")) {
+                    if (!method.equals("POST")) { send(ex, 405, error("Use POST")); return; }
+                    loan(ex, id, parts[2].equals("borrow"));
+                } else {
+                    send(ex, 404, error("Not found"));
+                }
+            } else {
+                send(ex, 404, error("Not found"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, error(e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            send(ex, 500, error("Internal error"));
+        } finally {
+            ex.close();
+        }
+    }
+
+    // ---------- Endpoints ----------
+    private void search(HttpExchange ex) throws IOException {
+        HashMap<String, String> params = query(ex);
+        int limit = DEFAULT_PAGE;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Math.min(MAX_PAGE, Math.max(1, Integer.parseInt(params.get("limit"))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit must be a number");
+            }
+        }
+        String by = params.containsKey("by") ? params.get("by") : "All";
+        String category = params.containsKey("category") ? params.get("category") : "All";
+        SearchPage page = library.searchPage(params.get("q"), by, category, limit, params.get("cursor"));
+
+        User viewer = authenticate(ex); // optional; only decides whether borrowers are shown
+        StringBuilder sb = new StringBuilder(128 + page.books.size() * 160);
+        sb.append("{\"books\":[");
+        List<Book> books = page.books;
+        for (int i = 0; i < books.size(); i++) {
+            if (i > 0) sb.append(',');
+            book(sb, books.get(i), viewer);
+        }
+        sb.append("],\"next\":");
+        string(sb, page.nextToken);
+        sb.append('}');
+        send(ex, 200, sb.toString());
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        FineLedger ledger = library.getFineLedger(); // last nightly accrual, null before the first
+        send(ex, 200, "{\"totalBooks\":" + library.totalBooks() + ",\"borrowed\":" + library.totalBorrowed()
+            + ",\"overdue\":" + library.overdueCount() + ",\"totalUsers\":" + library.totalUsers()
+            + ",\"accruedFines\":" + (ledger == null ? 0 : ledger.total()) + "}");
+    }
+
+    private void history(HttpExchange ex, String what) throws IOException {
+        LoanHistory history = library.getLoanHistory();
+        if (history == null) { send(ex, 404, error("Loan history is not being recorded.")); return; }
+        User user = authenticate(ex);
+        if (user == null) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"library\"");
+            send(ex, 401, error("Authentication required"));
+            return;
+        }
+        HashMap<String, String> params = query(ex);
+        LocalDate since = null;
+        if (params.containsKey("since")) {
+            try {
+                since = LocalDate.parse(params.get("since"));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("since must be a date (yyyy-mm-dd)");
+            }
+        }
+        StringBuilder sb = new StringBuilder(1024);
+        if (what.equals("top") || what.equals("categories")) {
+            List<LoanHistory.Count> counts = what.equals("top")
+                ? history.topTitles(number(params, "k", 10, MAX_PAGE), since) : history.loansByCategory(since);
+            sb.append('[');
+            for (int i = 0; i < counts.size(); i++) {
+                LoanHistory.Count c = counts.get(i);
+                if (i > 0) sb.append(',');
+                sb.append('{');
+                if (c.bookId > 0) sb.append("\"id\":").append(c.bookId).append(',');
+                string(sb.append(what.equals("top") ? "\"title\":" : "\"category\":"), c.name);
+                sb.append(",\"loans\":").append(c.loans).append('}');
+            }
+            send(ex, 200, sb.append(']').toString());
+        } else if (what.equals("me")) {
+            String username = user.getUsername();
+            if (params.containsKey("user") && !params.get("user").equalsIgnoreCase(username)) {
+                if (!user.isAdmin()) { send(ex, 403, error("Only admins can read another user's history")); return; }
+                username = params.get("user");
+            }
+            List<LoanHistory.Event> events = history.userHistory(username, number(params, "limit", DEFAULT_PAGE, MAX_PAGE), since);
+            sb.append('[');
+            for (int i = 0; i < events.size(); i++) {
+                LoanHistory.Event e = events.get(i);
+                if (i > 0) sb.append(',');
+                string(sb.append("{\"event\":"), e.isBorrow() ? "borrow" : "return");
+                string(sb.append(",\"date\":"), Book.formatDay(e.day));
+                sb.append(",\"id\":").append(e.bookId);
+                string(sb.append(",\"title\":"), e.title);
+                string(sb.append(",\"category\":"), e.category);
+                if (e.isBorrow()) string(sb.append(",\"dueDate\":"), Book.formatDay(e.amount));
+                else sb.append(",\"fine\":").append(e.amount);
+                sb.append('}');
+            }
+            send(ex, 200, sb.append(']').toString());
+        } else {
+            send(ex, 404, error("Not found"));
+        }
+    }
+
+    private static int number(HashMap<String, String> params, String name, int dflt, int max) {
+        if (!params.containsKey(name)) return dflt;
+        try {
+            return Math.min(max, Math.max(1, Integer.parseInt(params.get(name))));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private void loan(HttpExchange ex, int bookId, boolean borrow) throws IOException {
+        User user = authenticate(ex);
+        if (user == null) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"library\"");
+            send(ex, 401, error("Authentication required"));
+            return;
+        }
+        LoanResult r = borrow ? library.borrowResult(user, bookId) : library.returnResult(user, bookId);
+        int status = r.applied ? 200 : r.found ? 409 : 404; // 409: already borrowed, limit reached, not the borrower
+        StringBuilder sb = new StringBuilder(96).append("{\"ok\":").append(r.applied).append(",\"message\":");
+        string(sb, r.message).append('}');
+        send(ex, status, sb.toString());
+    }
+
+    private void batch(HttpExchange ex, boolean borrow) throws IOException {
+        User user = authenticate(ex);
+        if (user == null) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"library\"");
+            send(ex, 401, error("Authentication required"));
+            return;
+        }
+        String raw = query(ex).get("ids");
+        if (raw == null || raw.trim().isEmpty()) throw new IllegalArgumentException("ids is required");
+        String[] items = raw.split(",");
+        int[] ids = new int[items.length];
+        try {
+            for (int i = 0; i < items.length; i++) ids[i] = Integer.parseInt(items[i].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ids must be comma-separated numbers");
+        }
+        BatchResult r = borrow ? library.borrowBooks(user, ids) : library.returnBooks(user, ids);
+        StringBuilder sb = new StringBuilder(96 + ids.length * 64).append("{\"ok\":").append(r.applied);
+        string(sb.append(",\"message\":"), r.summary);
+        sb.append(",\"totalFine\":").append(r.totalFine).append(",\"items\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(ids[i]);
+            string(sb.append(",\"message\":"), r.messages[i]).append('}');
+        }
+        sb.append("]}");
+        send(ex, r.applied ? 200 : 409, sb.toString());
+    }
+
+    // HTTP Basic; null when the header is missing or the credentials do not match a user
+    private User authenticate(HttpExchange ex) {
+        String header = ex.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) return null;
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int colon = decoded.indexOf(':');
+        if (colon < 0) return null;
+        User u = library.findUserByUsername(decoded.substring(0, colon));
+        if (u == null || Library.hasDefaultPassword(u)) return null;
+        return u.checkPassword(decoded.substring(colon + 1)) ? u : null;
+    }
+
+    // ---------- JSON ----------
+    // viewer may be null (anonymous); the borrower is null unless the viewer is that borrower or an admin
+    private static StringBuilder book(StringBuilder sb, Book b, User viewer) {
+        sb.append("{\"id\":").append(b.getBookId());
+        string(sb.append(",\"title\":"), b.getTitle());
+        string(sb.append(",\"author\":"), b.getAuthor());
+        string(sb.append(",\"category\":"), b.getCategory());
+        sb.append(",\"available\":").append(b.isAvailable());
+        String borrower = b.getBorrowerUsername();
+        boolean visible = viewer != null && (viewer.isAdmin() || viewer.getUsername().equalsIgnoreCase(borrower));
+        string(sb.append(",\"borrower\":"), visible ? borrower : null);
+        string(sb.append(",\"borrowDate\":"), b.getBorrowDate());
+        string(sb.append(",\"dueDate\":"), b.getDueDate());
+        return sb.append('}');
+    }
+
+    private static StringBuilder string(StringBuilder sb, String v) {
+        if (v == null) return sb.append("null");
+        sb.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static String error(String message) {
+        return string(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private static HashMap<String, String> query(HttpExchange ex) throws UnsupportedEncodingException {
+        HashMap<String, String> params = new HashMap<String, String>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        OutputStream out = ex.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
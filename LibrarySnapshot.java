@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+// Versioned binary snapshot of a Library. All strings live once in a string table and records
+// refer to them by index (-1 = null), so book records are fixed width and decode in parallel
+// straight out of a memory-mapped file.
+//
+//   header   int magic, short version, int nextBookId, int nextUserId, long journalSeq,
+//            int stringCount, int bookCount, int userCount
+//   strings  int[stringCount + 1] byte offsets into the blob, then the UTF-8 blob
+//   books    bookCount x {int id, title, author, category, borrower, int borrowDay, int dueDay; byte available}
+//            (version 1 stored the two dates as string refs to ISO dates; still read and converted)
+//   users    userCount x {int id, username, password, role, borrowedCount, int[borrowedCount] bookIds}
+public class LibrarySnapshot {
+    static final int MAGIC = 0x4C494253; // "LIBS"
+    static final short VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 2 + 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int BOOK_BYTES = 7 * 4 + 1;
+    private static final int CHUNK = 1 << 16; // records per parallel decode task
+
+    // Fields of a decoded snapshot, handed to Library.restoreSnapshot
+    static class Contents {
+        Book[] books;
+        User[] users;
+        int nextBookId, nextUserId;
+        long journalSeq;
+    }
+
+    // ---------- Writing ----------
+    static void write(Path path, Collection<Book> books, Collection<User> users, int nextBookId, int nextUserId, long journalSeq) throws IOException {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        ArrayList<byte[]> strings = new ArrayList<byte[]>();
+        long blobBytes = 0;
+        for (Book b : books) {
+            blobBytes += intern(ids, strings, b.getTitle()) + intern(ids, strings, b.getAuthor()) + intern(ids, strings, b.getCategory())
+                + intern(ids, strings, b.getBorrowerUsername());
+        }
+        for (User u : users) {
+            blobBytes += intern(ids, strings, u.getUsername()) + intern(ids, strings, u.getPassword()) + intern(ids, strings, u.getRole());
+        }
+        if (blobBytes > Integer.MAX_VALUE) throw new IOException("String table too large for snapshot format v" + VERSION);
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+            out.putInt(MAGIC).putShort(VERSION).putInt(nextBookId).putInt(nextUserId).putLong(journalSeq)
+                .putInt(strings.size()).putInt(books.size()).putInt(users.size());
+
+            int offset = 0;
+            for (byte[] s : strings) {
+                out = room(ch, out, 4).putInt(offset);
+                offset += s.length;
+            }
+            out = room(ch, out, 4).putInt(offset);
+            for (byte[] s : strings) {
+                if (s.length > out.capacity()) {
+                    drain(ch, out);
+                    ByteBuffer big = ByteBuffer.wrap(s);
+                    while (big.hasRemaining()) ch.write(big);
+                } else {
+                    out = room(ch, out, s.length).put(s);
+                }
+            }
+
+            for (Book b : books) {
+                out = room(ch, out, BOOK_BYTES);
+                out.putInt(b.getBookId()).putInt(ref(ids, b.getTitle())).putInt(ref(ids, b.getAuthor())).putInt(ref(ids, b.getCategory()))
+                    .putInt(ref(ids, b.getBorrowerUsername())).putInt(b.getBorrowDay()).putInt(b.getDueDay())
+                    .put((byte) (b.isAvailable() ? 1 : 0));
+            }
+            for (User u : users) {
+                ArrayList<Integer> borrowed = u.getBorrowedBookIds();
+                out = room(ch, out, 5 * 4);
+                out.putInt(u.getUserId()).putInt(ref(ids, u.getUsername())).putInt(ref(ids, u.getPassword())).putInt(ref(ids, u.getRole()))
+                    .putInt(borrowed.size());
+                for (Integer id : borrowed) out = room(ch, out, 4).putInt(id);
+            }
+            drain(ch, out);
+            ch.force(true);
+        }
+    }
+
+    // Renames a finished snapshot over target, then forces the directory so the rename itself survives
+    // a power cut. Some platforms (Windows) cannot open a directory; there the rename is left to the OS.
+    static void install(Path tmp, Path target) throws IOException {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path dir = target.toAbsolutePath().getParent();
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            ch.force(true);
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static int intern(HashMap<String, Integer> ids, ArrayList<byte[]> strings, String s) {
+        if (s == null || ids.containsKey(s)) return 0;
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        ids.put(s, strings.size());
+        strings.add(utf8);
+        return utf8.length;
+    }
+
+    private static int ref(HashMap<String, Integer> ids, String s) {
+        return s == null ? -1 : ids.get(s);
+    }
+
+    private static ByteBuffer room(FileChannel ch, ByteBuffer out, int bytes) throws IOException {
+        if (out.remaining() < bytes) drain(ch, out);
+        return out;
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) ch.write(out);
+        out.clear();
+    }
+
+    // ---------- Reading ----------
+    static Contents read(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot larger than 2 GB cannot be mapped in one piece");
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_BYTES || map.getInt(0) != MAGIC) throw new IOException("Not a library snapshot: " + path);
+            short version = map.getShort(4);
+            if (version != VERSION && version != 1) throw new IOException("Unsupported snapshot version " + version);
+
+            Contents c = new Contents();
+            c.nextBookId = map.getInt(6);
+            c.nextUserId = map.getInt(10);
+            c.journalSeq = map.getLong(14);
+            int stringCount = map.getInt(22);
+            int bookCount = map.getInt(26);
+            int userCount = map.getInt(30);
+
+            int offsets = HEADER_BYTES;
+            int blob = offsets + (stringCount + 1) * 4;
+            int bookBase = blob + map.getInt(offsets + stringCount * 4);
+            String[] strings = decodeStrings(map, offsets, blob, stringCount);
+            c.books = decodeBooks(map, bookBase, bookCount, strings, version == 1);
+
+            int pos = bookBase + bookCount * BOOK_BYTES;
+            c.users = new User[userCount];
+            for (int i = 0; i < userCount; i++) {
+                User u = new User(map.getInt(pos), str(strings, map.getInt(pos + 4)), str(strings, map.getInt(pos + 8)), str(strings, map.getInt(pos + 12)));
+                int borrowed = map.getInt(pos + 16);
+                pos += 20;
+                for (int k = 0; k < borrowed; k++, pos += 4) u.borrowBookId(map.getInt(pos));
+                c.users[i] = u;
+            }
+            return c;
+        }
+    }
+
+    private static String[] decodeStrings(final MappedByteBuffer map, final int offsets, final int blob, final int count) {
+        final String[] strings = new String[count];
+        IntStream.range(0, (count + CHUNK - 1) / CHUNK).parallel().forEach(new IntConsumer() {
+            public void accept(int chunk) {
+                ByteBuffer view = map.duplicate(); // positions are per view, so each task gets its own
+                byte[] scratch = new byte[256];
+                int end = Math.min(count, (chunk + 1) * CHUNK);
+                for (int i = chunk * CHUNK; i < end; i++) {
+                    int from = view.getInt(offsets + i * 4);
+                    int len = view.getInt(offsets + (i + 1) * 4) - from;
+                    if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+                    view.position(blob + from);
+                    view.get(scratch, 0, len);
+                    strings[i] = new String(scratch, 0, len, StandardCharsets.UTF_8);
+                }
+            }
+        });
+        return strings;
+    }
+
+    private static Book[] decodeBooks(final MappedByteBuffer map, final int base, final int count, final String[] strings, final boolean isoDates) {
+        final Book[] books = new Book[count];
+        IntStream.range(0, (count + CHUNK - 1) / CHUNK).parallel().forEach(new IntConsumer() {
+            public void accept(int chunk) {
+                int end = Math.min(count, (chunk + 1) * CHUNK);
+                for (int i = chunk * CHUNK; i < end; i++) {
+                    int p = base + i * BOOK_BYTES;
+                    Book b = new Book(map.getInt(p), str(strings, map.getInt(p + 4)), str(strings, map.getInt(p + 8)), str(strings, map.getInt(p + 12)));
+                    if (map.get(p + 28) == 0) {
+                        String borrower = str(strings, map.getInt(p + 16));
+                        if (isoDates) b.markBorrowed(borrower, str(strings, map.getInt(p + 20)), str(strings, map.getInt(p + 24)));
+                        else b.markBorrowed(borrower, map.getInt(p + 20), map.getInt(p + 24));
+                    }
+                    books[i] = b;
+                }
+            }
+        });
+        return books;
+    }
+
+    private static String str(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+}
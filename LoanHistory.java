@@ -0,0 +1,619 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Append-only record of every borrow and return, kept after the loan itself is gone (a Book only
+// holds its current loan). Files in one directory:
+//   history-<n>.log      raw log n, appended: [int length][int crc32][event], as in LibraryJournal,
+//                        one channel write per event, so an event is in the file (the OS cache) as soon
+//                        as the loan is, and Library.save() forces both in the same group commit
+//   history-<a>-<b>.seg  sealed: [int magic][int events][int minDay][int maxDay], then the gzipped
+//                        events of raw logs a..b
+// The active log rolls over at SEGMENT_BYTES without waiting for the disk: the background thread
+// forces and closes each rolled log before it seals it, and merges runs of small sealed segments;
+// each new file is written beside its target and renamed into place, so
+// files left behind by an interrupted compaction are recognised by their covered range on open.
+// Queries read the segments in order and keep only their aggregates in memory.
+public class LoanHistory implements Closeable {
+    public static final byte BORROWED = 1, RETURNED = 2;
+    static final int SEGMENT_BYTES = Integer.getInteger("library.historySegmentBytes", 4 << 20);
+    static final long MERGE_BYTES = 32L << 20; // merged segments grow up to this (compressed)
+    static final int MERGE_FANIN = 8;          // small sealed segments in a row before they are merged
+    private static final int MAGIC = 0x4C48530A;
+    private static final Pattern LOG_NAME = Pattern.compile("history-(\\d+)\\.log");
+    private static final Pattern SEG_NAME = Pattern.compile("history-(\\d+)-(\\d+)\\.seg");
+
+    // One borrow or return; amount is the due day (epoch day) of a borrow and the fine of a return
+    public static final class Event {
+        public final byte op;
+        public final int bookId;
+        public final int day;
+        public final int amount;
+        public final String username;
+        public final String title;
+        public final String category;
+
+        Event(byte op, int bookId, int day, int amount, String username, String title, String category) {
+            this.op = op;
+            this.bookId = bookId;
+            this.day = day;
+            this.amount = amount;
+            this.username = username;
+            this.title = title;
+            this.category = category;
+        }
+
+        public boolean isBorrow() { return op == BORROWED; }
+        public LocalDate getDate() { return LocalDate.ofEpochDay(day); }
+    }
+
+    public interface Visitor {
+        void event(Event e);
+    }
+
+    // A query result row: a title (bookId > 0) or a category (bookId 0) and how often it was lent
+    public static final class Count {
+        public final int bookId;
+        public final String name;
+        public final long loans;
+
+        Count(int bookId, String name, long loans) {
+            this.bookId = bookId;
+            this.name = name;
+            this.loans = loans;
+        }
+    }
+
+    // One file; the segment list is replaced as a whole, never changed in place
+    private static final class Segment {
+        final long first, last; // raw log numbers covered
+        final boolean sealed;
+        final Path path;
+        final int minDay, maxDay; // sealed only
+        final long bytes;         // sealed only
+
+        Segment(long first, long last, boolean sealed, Path path, int minDay, int maxDay, long bytes) {
+            this.first = first;
+            this.last = last;
+            this.sealed = sealed;
+            this.path = path;
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Path dir;
+    private volatile Segment[] segments; // in log order; the last one is the active log
+    // queries hold the read lock while they scan; compaction deletes files only under the write lock
+    private final ReentrantReadWriteLock files = new ReentrantReadWriteLock();
+    private final ExecutorService compactor;
+
+    // active log, guarded by this
+    private FileChannel channel;
+    private long activeBytes;
+    private boolean closed;
+    private final ArrayList<FileChannel> rolled = new ArrayList<FileChannel>(); // full logs not yet forced and closed
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream(128);
+    private final DataOutputStream out = new DataOutputStream(buf);
+    private final CRC32 crc = new CRC32();
+
+    private LoanHistory(Path dir, List<Segment> existing, long nextLog) throws IOException {
+        this.dir = dir;
+        ArrayList<Segment> list = new ArrayList<Segment>(existing);
+        list.add(openActive(nextLog));
+        segments = list.toArray(new Segment[list.size()]);
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "library-history");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        scheduleCompaction(); // seals the logs of earlier runs
+    }
+
+    // Existing segments are kept; appends always go to a fresh log, so a torn tail stays in the old one
+    static LoanHistory open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        ArrayList<Segment> sealed = new ArrayList<Segment>();
+        ArrayList<Segment> logs = new ArrayList<Segment>();
+        long maxLog = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "history-*")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                Matcher m;
+                if ((m = SEG_NAME.matcher(name)).matches()) {
+                    try {
+                        sealed.add(readHeader(p, Long.parseLong(m.group(1)), Long.parseLong(m.group(2))));
+                    } catch (IOException e) {
+                        e.printStackTrace(); // unreadable segment: left on disk, skipped by queries
+                        continue;
+                    }
+                    maxLog = Math.max(maxLog, Long.parseLong(m.group(2)));
+                } else if ((m = LOG_NAME.matcher(name)).matches()) {
+                    long n = Long.parseLong(m.group(1));
+                    logs.add(new Segment(n, n, false, p, 0, 0, 0));
+                    maxLog = Math.max(maxLog, n);
+                } else if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(p); // a seal or merge that never got renamed into place
+                }
+            }
+        }
+
+        // widest first among equal starts, so anything inside an earlier range is a leftover
+        Collections.sort(sealed, new Comparator<Segment>() {
+            public int compare(Segment a, Segment b) {
+                if (a.first != b.first) return Long.compare(a.first, b.first);
+                return Long.compare(b.last, a.last);
+            }
+        });
+        ArrayList<Segment> kept = new ArrayList<Segment>();
+        for (Segment s : sealed) {
+            if (!kept.isEmpty() && s.last <= kept.get(kept.size() - 1).last) Files.deleteIfExists(s.path);
+            else kept.add(s);
+        }
+        for (Segment l : logs) {
+            if (covered(kept, l.first)) Files.deleteIfExists(l.path);
+            else kept.add(l);
+        }
+        Collections.sort(kept, new Comparator<Segment>() {
+            public int compare(Segment a, Segment b) { return Long.compare(a.first, b.first); }
+        });
+        return new LoanHistory(dir, kept, maxLog + 1);
+    }
+
+    private static boolean covered(List<Segment> sealed, long n) {
+        for (Segment s : sealed) {
+            if (s.first <= n && n <= s.last) return true;
+        }
+        return false;
+    }
+
+    private static Segment readHeader(Path p, long first, long last) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p), 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a history segment: " + p);
+            in.readInt();
+            int minDay = in.readInt();
+            int maxDay = in.readInt();
+            return new Segment(first, last, true, p, minDay, maxDay, Files.size(p));
+        }
+    }
+
+    private Segment openActive(long n) throws IOException {
+        Path p = dir.resolve("history-" + n + ".log");
+        channel = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        activeBytes = 0;
+        return new Segment(n, n, false, p, 0, 0, 0);
+    }
+
+    // ---------- Appends (callers hold the book's loan stripe, so one book's events stay in order) ----------
+    public synchronized void borrowed(Book b) {
+        append(BORROWED, b.getBookId(), b.getBorrowDay(), b.getDueDay(), b.getBorrowerUsername(), b.getTitle(), b.getCategory());
+    }
+
+    // b is still on loan to borrower
+    public synchronized void returned(Book b, String borrower, int day, int fine) {
+        append(RETURNED, b.getBookId(), day, fine, borrower, b.getTitle(), b.getCategory());
+    }
+
+    private void append(byte op, int bookId, int day, int amount, String username, String title, String category) {
+        if (closed) return;
+        buf.reset();
+        try {
+            writeEvent(out, op, bookId, day, amount, fit(username), fit(title), fit(category));
+        } catch (IOException e) {
+            e.printStackTrace(); // nothing of a half-built event reaches the log
+            return;
+        }
+        byte[] payload = buf.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long start = -1;
+            try {
+                start = channel.position();
+                while (record.hasRemaining()) channel.write(record);
+                activeBytes += record.limit();
+                if (activeBytes >= SEGMENT_BYTES) roll();
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                // reads stop at a torn record, so never write after one: cut it off if possible and
+                // carry on (this event first) in a fresh log
+                try {
+                    if (start >= 0) channel.truncate(start);
+                } catch (IOException again) {
+                    again.printStackTrace();
+                }
+                try {
+                    roll();
+                } catch (IOException again) {
+                    again.printStackTrace();
+                    return;
+                }
+                record.rewind();
+            }
+        }
+    }
+
+    // Caller holds this; the full log is handed to the compactor, which forces and closes it, so the
+    // desk that fills a log does not wait for the disk
+    private void roll() throws IOException {
+        Segment[] old = segments;
+        Segment[] next = java.util.Arrays.copyOf(old, old.length + 1);
+        FileChannel full = channel;
+        next[old.length] = openActive(old[old.length - 1].last + 1);
+        rolled.add(full);
+        segments = next;
+        scheduleCompaction();
+    }
+
+    private static void writeEvent(DataOutputStream o, byte op, int bookId, int day, int amount,
+                                   String username, String title, String category) throws IOException {
+        o.writeByte(op);
+        o.writeInt(bookId);
+        o.writeInt(day);
+        o.writeInt(amount);
+        writeStr(o, username);
+        writeStr(o, title);
+        writeStr(o, category);
+    }
+
+    private static Event readEvent(DataInputStream in) throws IOException {
+        return new Event(in.readByte(), in.readInt(), in.readInt(), in.readInt(), readStr(in), readStr(in), readStr(in));
+    }
+
+    // Cut to what writeUTF can encode (65535 bytes of modified UTF-8), never inside a surrogate pair;
+    // Library already refuses longer text, this keeps older or imported data from breaking the log
+    static String fit(String s) {
+        if (s == null || s.length() <= 65535 / 3) return s;
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            bytes += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+            if (bytes > 65535) {
+                if (i > 0 && Character.isHighSurrogate(s.charAt(i - 1))) i--;
+                return s.substring(0, i);
+            }
+        }
+        return s;
+    }
+
+    private static void writeStr(DataOutputStream o, String s) throws IOException {
+        o.writeBoolean(s != null);
+        if (s != null) o.writeUTF(s);
+    }
+
+    private static String readStr(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ---------- Durability ----------
+    // Called from Library.save(); the fsync runs outside the monitor, like LibraryJournal.sync()
+    public void sync() {
+        FileChannel ch;
+        FileChannel[] full;
+        synchronized (this) {
+            if (closed) return;
+            ch = channel;
+            full = rolled.toArray(new FileChannel[rolled.size()]);
+        }
+        for (FileChannel f : full) force(f);
+        force(ch);
+    }
+
+    private static void force(FileChannel ch) {
+        try {
+            ch.force(false);
+        } catch (ClosedChannelException e) {
+            // rolled over and closed in the meantime; logs are forced before they are closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Forces and closes the logs rolled over so far
+    private void closeRolled() {
+        FileChannel[] full;
+        synchronized (this) {
+            full = rolled.toArray(new FileChannel[rolled.size()]);
+            rolled.clear();
+        }
+        for (FileChannel f : full) {
+            force(f);
+            try {
+                f.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Lets a running compaction finish, then flushes and closes the active log and any rolled ones
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            channel.force(false);
+            channel.close();
+        }
+        closeRolled(); // no appends, so no more rolls, once closed is set
+    }
+
+    // ---------- Compaction (on the library-history thread) ----------
+    private void scheduleCompaction() {
+        try {
+            compactor.execute(new Runnable() {
+                public void run() { compact(); }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // closing
+        }
+    }
+
+    private void compact() {
+        try {
+            Segment[] now = segments;
+            closeRolled(); // every log before the active one in now is durable from here on
+            for (int i = 0; i < now.length - 1; i++) { // the last one is still being appended
+                if (!now[i].sealed) replace(Collections.singletonList(now[i]));
+            }
+            // runs of small sealed segments, oldest first
+            now = segments;
+            ArrayList<Segment> run = new ArrayList<Segment>();
+            long runBytes = 0;
+            for (Segment s : now) {
+                boolean fits = s.sealed && runBytes + s.bytes <= MERGE_BYTES;
+                if (!fits) {
+                    if (run.size() >= MERGE_FANIN) replace(run);
+                    run = new ArrayList<Segment>();
+                    runBytes = 0;
+                    if (!s.sealed || s.bytes > MERGE_BYTES) continue;
+                }
+                run.add(s);
+                runBytes += s.bytes;
+            }
+            if (run.size() >= MERGE_FANIN) replace(run);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Writes the events of consecutive segments into one sealed segment and swaps it in
+    private void replace(List<Segment> sources) throws IOException {
+        long first = sources.get(0).first, last = sources.get(sources.size() - 1).last;
+        Path target = dir.resolve("history-" + first + "-" + last + ".seg");
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        final int[] header = {MAGIC, 0, Integer.MAX_VALUE, Integer.MIN_VALUE}; // magic, events, minDay, maxDay
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.position(16);
+            GZIPOutputStream gz = new GZIPOutputStream(Channels.newOutputStream(ch), 1 << 16);
+            final DataOutputStream o = new DataOutputStream(new BufferedOutputStream(gz, 1 << 16));
+            final IOException[] failed = new IOException[1];
+            Visitor copy = new Visitor() {
+                public void event(Event e) {
+                    try {
+                        writeEvent(o, e.op, e.bookId, e.day, e.amount, e.username, e.title, e.category);
+                    } catch (IOException ex) {
+                        failed[0] = ex;
+                    }
+                    header[1]++;
+                    header[2] = Math.min(header[2], e.day);
+                    header[3] = Math.max(header[3], e.day);
+                }
+            };
+            for (Segment s : sources) read(s, Integer.MIN_VALUE, copy);
+            if (failed[0] != null) throw failed[0];
+            o.flush();
+            gz.finish();
+            ByteBuffer hb = ByteBuffer.allocate(16);
+            for (int v : header) hb.putInt(v);
+            hb.flip();
+            while (hb.hasRemaining()) ch.write(hb, 16 - hb.remaining());
+            ch.force(false);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Segment merged = new Segment(first, last, true, target, header[2], header[3], Files.size(target));
+
+        files.writeLock().lock();
+        try {
+            synchronized (this) {
+                ArrayList<Segment> next = new ArrayList<Segment>(segments.length);
+                for (Segment s : segments) {
+                    if (s == sources.get(0)) next.add(merged);
+                    else if (!sources.contains(s)) next.add(s);
+                }
+                segments = next.toArray(new Segment[next.size()]);
+            }
+            for (Segment s : sources) {
+                if (!s.path.equals(target)) Files.deleteIfExists(s.path);
+            }
+        } finally {
+            files.writeLock().unlock();
+        }
+    }
+
+    // ---------- Queries ----------
+    // Every event from since on (null = all), oldest first, one segment at a time
+    public void scan(LocalDate since, Visitor v) throws IOException {
+        int from = since == null ? Integer.MIN_VALUE : (int) since.toEpochDay();
+        files.readLock().lock();
+        try {
+            for (Segment s : segments) {
+                if (s.sealed && s.maxDay < from) continue; // whole segment is older
+                read(s, from, v);
+            }
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    private static void read(Segment s, int from, Visitor v) throws IOException {
+        if (s.sealed) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(s.path), 1 << 16))) {
+                if (in.readInt() != MAGIC) throw new IOException("Not a history segment: " + s.path);
+                int events = in.readInt();
+                in.readInt();
+                in.readInt();
+                DataInputStream body = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+                for (int i = 0; i < events; i++) {
+                    Event e = readEvent(body);
+                    if (e.day >= from) v.event(e);
+                }
+            }
+            return;
+        }
+        if (!Files.exists(s.path)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(s.path), 1 << 16))) {
+            CRC32 check = new CRC32();
+            while (true) {
+                byte[] payload;
+                int sum;
+                try {
+                    int len = in.readInt();
+                    sum = in.readInt();
+                    if (len <= 0 || len > (1 << 20)) break;
+                    payload = new byte[len];
+                    in.readFully(payload);
+                } catch (EOFException eof) {
+                    break; // end of the log, or a torn tail
+                }
+                check.reset();
+                check.update(payload, 0, payload.length);
+                if ((int) check.getValue() != sum) break;
+                Event e = readEvent(new DataInputStream(new ByteArrayInputStream(payload)));
+                if (e.day >= from) v.event(e);
+            }
+        }
+    }
+
+    // The k most borrowed titles since the given date (null = ever), most borrowed first. Memory is
+    // one counter per distinct book in the history, whatever its length.
+    public List<Count> topTitles(int k, LocalDate since) throws IOException {
+        final HashMap<Integer, Tally> byBook = new HashMap<Integer, Tally>();
+        scan(since, new Visitor() {
+            public void event(Event e) {
+                if (e.op != BORROWED) return;
+                Tally t = byBook.get(e.bookId);
+                if (t == null) byBook.put(e.bookId, t = new Tally(e.bookId));
+                t.name = e.title; // latest spelling wins
+                t.loans++;
+            }
+        });
+        return top(byBook.values(), k);
+    }
+
+    // Loans per category since the given date (null = ever), most borrowed first
+    public List<Count> loansByCategory(LocalDate since) throws IOException {
+        final HashMap<String, Tally> byCategory = new HashMap<String, Tally>();
+        scan(since, new Visitor() {
+            public void event(Event e) {
+                if (e.op != BORROWED) return;
+                String c = e.category == null ? "General" : e.category;
+                String key = Library.foldCase(c);
+                Tally t = byCategory.get(key);
+                if (t == null) {
+                    byCategory.put(key, t = new Tally(0));
+                    t.name = c; // first spelling seen, as on the dashboard
+                }
+                t.loans++;
+            }
+        });
+        return top(byCategory.values(), byCategory.size());
+    }
+
+    // The user's latest borrows and returns since the given date (null = ever), oldest first; at most
+    // limit events are held while scanning
+    public List<Event> userHistory(String username, final int limit, LocalDate since) throws IOException {
+        final String key = Library.foldCase(username);
+        final ArrayDeque<Event> latest = new ArrayDeque<Event>();
+        if (limit <= 0 || key == null) return new ArrayList<Event>();
+        scan(since, new Visitor() {
+            public void event(Event e) {
+                if (e.username == null || !key.equals(Library.foldCase(e.username))) return;
+                if (latest.size() == limit) latest.removeFirst();
+                latest.addLast(e);
+            }
+        });
+        return new ArrayList<Event>(latest);
+    }
+
+    private static final class Tally {
+        final int bookId;
+        String name;
+        long loans;
+
+        Tally(int bookId) { this.bookId = bookId; }
+    }
+
+    private static final Comparator<Count> FEWEST_FIRST = new Comparator<Count>() {
+        public int compare(Count a, Count b) {
+            if (a.loans != b.loans) return Long.compare(a.loans, b.loans);
+            return a.name == null || b.name == null ? 0 : b.name.compareTo(a.name);
+        }
+    };
+
+    // Bounded min-heap of k, then largest first
+    private static List<Count> top(Iterable<Tally> tallies, int k) {
+        ArrayList<Count> result = new ArrayList<Count>();
+        if (k <= 0) return result;
+        PriorityQueue<Count> heap = new PriorityQueue<Count>(Math.min(k, 1024) + 1, FEWEST_FIRST);
+        for (Tally t : tallies) {
+            heap.offer(new Count(t.bookId, t.name, t.loans));
+            if (heap.size() > k) heap.poll();
+        }
+        result.addAll(heap);
+        Collections.sort(result, Collections.reverseOrder(FEWEST_FIRST));
+        return result;
+    }
+
+    // ---------- Status ----------
+    public int segmentCount() { return segments.length; }
+
+    public long diskBytes() {
+        long total = 0;
+        for (Segment s : segments) {
+            try {
+                total += Files.size(s.path);
+            } catch (IOException e) {
+                // removed by a compaction since the list was read
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,16 @@
+// Outcome of a single borrow or return (Library.borrowResult / returnResult)
+public class LoanResult {
+    public final int bookId;
+    public final boolean applied;
+    public final boolean found;     // false when no book has that id
+    public final int fine;          // returns only; 0 when not applied
+    public final String message;    // one line for a dialog or a log
+
+    LoanResult(int bookId, boolean applied, boolean found, int fine, String message) {
+        this.bookId = bookId;
+        this.applied = applied;
+        this.found = found;
+        this.fine = fine;
+        this.message = message;
+    }
+}
@@ -0,0 +1,68 @@
+// Moves Library.save() off the calling (Swing) thread. Mutations only mark the library dirty; a
+// dedicated thread waits out the durability window after the first dirty mark and then persists
+// the whole burst with a single save (one journal fsync, or one snapshot without a journal).
+public class PersistenceScheduler {
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 250;
+
+    private final Library library;
+    private final long maxLatencyNanos;
+    private final Thread worker;
+
+    private boolean dirty;
+    private boolean stopped;
+    private long firstDirtyAt;
+
+    public PersistenceScheduler(Library library, long maxLatencyMillis) {
+        this.library = library;
+        this.maxLatencyNanos = Math.max(0, maxLatencyMillis) * 1000000L;
+        worker = new Thread(new Runnable() {
+            public void run() { loop(); }
+        }, "library-persistence");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Cheap enough to call on every mutation: only the first mark of a burst wakes the worker
+    public synchronized void markDirty() {
+        if (dirty) return;
+        dirty = true;
+        firstDirtyAt = System.nanoTime();
+        notifyAll();
+    }
+
+    private void loop() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!dirty && !stopped) wait();
+                    if (!dirty) return; // stopped with nothing pending
+                    long remaining;
+                    while (!stopped && (remaining = firstDirtyAt + maxLatencyNanos - System.nanoTime()) > 0) {
+                        wait(remaining / 1000000L, (int) (remaining % 1000000L));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                dirty = false;
+            }
+            try {
+                library.save(); // outside the monitor so markDirty never waits on disk
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Writes anything still pending and stops the worker; the caller then checkpoints
+    public void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
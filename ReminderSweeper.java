@@ -0,0 +1,62 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Periodic reminder pass over the due-date index: each sweep reads only the loans that are overdue
+// or fall due within the next daysAhead days and hands them to the listener.
+public class ReminderSweeper {
+    public static final int DEFAULT_DAYS_AHEAD = 3;
+
+    public interface Listener {
+        // dueSoon: due today .. today + daysAhead; overdue: due before today. Both earliest first.
+        void remind(LocalDate today, List<Book> dueSoon, List<Book> overdue);
+    }
+
+    private final Library library;
+    private final int daysAhead;
+    private final Listener listener;
+    private ScheduledExecutorService timer;
+
+    public ReminderSweeper(Library library, int daysAhead, Listener listener) {
+        this.library = library;
+        this.daysAhead = Math.max(0, daysAhead);
+        this.listener = listener;
+    }
+
+    public void sweep() {
+        sweep(LocalDate.now());
+    }
+
+    public void sweep(LocalDate today) {
+        List<Book> dueSoon = library.loansDueBetween(today, today.plusDays(daysAhead));
+        List<Book> overdue = library.loansDueBetween(LocalDate.MIN, today.minusDays(1));
+        try {
+            listener.remind(today, dueSoon, overdue);
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // a failing listener must not stop later sweeps
+        }
+    }
+
+    // First sweep right away, then every periodMinutes on a daemon thread
+    public synchronized void start(long periodMinutes) {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "library-reminders");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.scheduleAtFixedRate(new Runnable() {
+            public void run() { sweep(); }
+        }, 0, Math.max(1, periodMinutes), TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) timer.shutdownNow();
+        timer = null;
+    }
+}
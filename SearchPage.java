@@ -0,0 +1,43 @@
+import java.util.List;
+
+// One page of Library.searchPage. Results are in catalog (book id) order, which new books only extend,
+// so a continuation token stays valid while the catalog changes: it resumes after the last book
+// returned. The token also carries a fingerprint of the query and is refused for a different one.
+public class SearchPage {
+    public final List<Book> books;
+    public final String nextToken; // null on the last page
+
+    SearchPage(List<Book> books, String nextToken) {
+        this.books = books;
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasMore() { return nextToken != null; }
+
+    // ---------- Tokens ----------
+    // "<next id in base 36>.<query fingerprint in hex>"
+    static String token(int nextId, String query, String searchBy, String categoryFilter) {
+        return Integer.toString(nextId, 36) + "." + Integer.toHexString(fingerprint(query, searchBy, categoryFilter));
+    }
+
+    // First id to search from; 1 for a null token
+    static int resumeFrom(String token, String query, String searchBy, String categoryFilter) {
+        if (token == null || token.isEmpty()) return 1;
+        int dot = token.indexOf('.');
+        try {
+            if (dot > 0 && (int) Long.parseLong(token.substring(dot + 1), 16) == fingerprint(query, searchBy, categoryFilter)) {
+                int next = Integer.parseInt(token.substring(0, dot), 36);
+                if (next >= 1) return next;
+            }
+        } catch (NumberFormatException e) { /* fall through */ }
+        throw new IllegalArgumentException("Invalid continuation token for this search: " + token);
+    }
+
+    // Normalized the way BookSearchIndex reads its arguments, so equivalent queries share tokens
+    private static int fingerprint(String query, String searchBy, String categoryFilter) {
+        String q = query == null ? "" : query.trim().toLowerCase();
+        String by = searchBy == null ? "" : searchBy.toLowerCase();
+        String cat = categoryFilter == null ? "" : Library.foldCase(categoryFilter);
+        return (q + '\u0000' + by + '\u0000' + cat).hashCode();
+    }
+}
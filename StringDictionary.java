@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Interns repeated values (authors, categories) into small integer codes. Each distinct value is kept
+// once and every holder shares that instance, so a catalog of millions of books carries one String per
+// author rather than one per book. Codes are dense from 0 and never reused. Not thread-safe: callers
+// hold Library's write lock (or are still loading) when adding.
+public class StringDictionary {
+    private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+    private final ArrayList<String> values = new ArrayList<String>();
+
+    // Code of s, adding it if new; null has no code (-1)
+    public int intern(String s) {
+        if (s == null) return -1;
+        Integer code = codes.get(s);
+        if (code == null) {
+            code = values.size();
+            codes.put(s, code);
+            values.add(s);
+        }
+        return code;
+    }
+
+    // The shared instance equal to s
+    public String canonical(String s) {
+        int code = intern(s);
+        return code < 0 ? null : values.get(code);
+    }
+
+    // Code of s if already interned, else -1; never adds
+    public int code(String s) {
+        Integer code = s == null ? null : codes.get(s);
+        return code == null ? -1 : code;
+    }
+
+    public String value(int code) { return values.get(code); }
+    public int size() { return values.size(); }
+
+    // Independent copy with the same codes, for readers that must not see later additions
+    public StringDictionary copy() {
+        StringDictionary d = new StringDictionary();
+        d.codes.putAll(codes);
+        d.values.addAll(values);
+        return d;
+    }
+
+    public void clear() {
+        codes.clear();
+        values.clear();
+    }
+}
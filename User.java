@@ -2,9 +2,11 @@ import java.io.Serializable;
 import java.util.ArrayList;
 
 public class User implements Serializable {
+    private static final long serialVersionUID = 8190338952458615183L;
+
     private int userId;
     private String username;
-    private String password;
+    private volatile String password; // replaced by Library.changePassword
     private String role; // "ADMIN" or "USER"
     private ArrayList<Integer> borrowedBookIds;
 
@@ -22,20 +24,50 @@ public class User implements Serializable {
     public String getUsername() { return username; }
     public String getRole() { return role; }
     public ArrayList<Integer> getBorrowedBookIds() { return borrowedBookIds; }
+    String getPassword() { return password; } // persistence only
+    void setPassword(String password) { this.password = password; }
 
     public boolean checkPassword(String input) { return password.equals(input); }
     public boolean isAdmin() { return "ADMIN".equalsIgnoreCase(role); }
-    public int borrowedCount() { return borrowedBookIds.size(); }
+    public synchronized int borrowedCount() { return borrowedBookIds.size(); }
+
+    // Detached copy for writing a snapshot while the original keeps changing
+    synchronized User copy() {
+        User u = new User(userId, username, password, role);
+        u.borrowedBookIds.addAll(borrowedBookIds);
+        return u;
+    }
 
-    public boolean canBorrowMore() {
+    public synchronized boolean canBorrowMore() {
         return borrowedBookIds.size() < BORROW_LIMIT;
     }
 
-    public void borrowBookId(int id) {
+    // Limit check and insert as one step, so concurrent desks can never push a user past BORROW_LIMIT
+    public synchronized boolean tryBorrowBookId(int id) {
+        if (borrowedBookIds.contains(id)) return true;
+        if (borrowedBookIds.size() >= BORROW_LIMIT) return false;
+        borrowedBookIds.add(id);
+        return true;
+    }
+
+    // Batch form: adds every (distinct) id, or none of them when that would pass BORROW_LIMIT
+    public synchronized boolean tryBorrowBookIds(int[] ids) {
+        int adding = 0;
+        for (int id : ids) {
+            if (!borrowedBookIds.contains(id)) adding++;
+        }
+        if (adding > 0 && borrowedBookIds.size() + adding > BORROW_LIMIT) return false;
+        for (int id : ids) {
+            if (!borrowedBookIds.contains(id)) borrowedBookIds.add(id);
+        }
+        return true;
+    }
+
+    public synchronized void borrowBookId(int id) {
         if (!borrowedBookIds.contains(id)) borrowedBookIds.add(id);
     }
 
-    public void returnBookId(int id) {
+    public synchronized void returnBookId(int id) {
         borrowedBookIds.remove(Integer.valueOf(id));
     }
 }
@@ -0,0 +1,41 @@
+import java.util.Random;
+
+// Heap held by a generated catalog and the time of a full catalog scan, for comparing the default
+// object store with the columnar one. Run it once per store:
+//
+//   java -Xmx8g -cp benchmarks/target/benchmarks.jar CatalogFootprint [books]
+//   java -Xmx8g -Dlibrary.store=columnar -cp benchmarks/target/benchmarks.jar CatalogFootprint [books]
+public class CatalogFootprint {
+    public static void main(String[] args) {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long before = usedHeap();
+        Library library = new Library();
+        User[] users = CatalogGenerator.populate(library, books, Math.max(1, books / 100), 42);
+        Random r = new Random(7);
+        for (User u : users) {
+            for (int i = 0; i < 3; i++) library.borrowBook(u, 1 + r.nextInt(books));
+        }
+        long after = usedHeap();
+        System.out.printf("%s store, %d books: %.1f MB heap, %.1f bytes per book%n",
+            System.getProperty("library.store", "objects"), books, (after - before) / 1e6, (after - before) / (double) books);
+
+        int onLoan = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            onLoan = 0;
+            for (Book b : library.getBooks()) {
+                if (!b.isAvailable()) onLoan++;
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("full scan: %.1f ms (%d on loan, counter says %d)%n", best / 1e6, onLoan, library.totalBorrowed());
+        if (library.totalBooks() != books) throw new IllegalStateException("lost books");
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
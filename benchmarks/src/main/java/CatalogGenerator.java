@@ -0,0 +1,46 @@
+import java.util.Random;
+
+// Deterministic synthetic catalog: titles built from a small vocabulary (so substring queries hit
+// realistic posting-list sizes), authors drawn from a pool of about books/20 names, 40 categories.
+public class CatalogGenerator {
+    private static final String[] WORDS = {
+        "garden", "night", "river", "empire", "shadow", "code", "history", "winter", "secret", "island",
+        "machine", "love", "war", "silent", "house", "journey", "stone", "ocean", "light", "kingdom",
+        "patterns", "design", "clean", "effective", "java", "systems", "mind", "road", "glass", "fire",
+        "storm", "city", "forest", "letters", "memory", "silver", "dream", "voyage", "north", "star"
+    };
+    private static final String[] FIRST = {
+        "Ada", "Alan", "Grace", "Leo", "Maya", "Omar", "Priya", "Ravi", "Sara", "Tom",
+        "Yuki", "Zoe", "Ivan", "Nina", "Paulo", "Robert", "Joshua", "Eric", "Anita", "Chen"
+    };
+    private static final String[] CATEGORIES = {
+        "Programming", "Fiction", "History", "Science", "Poetry", "Travel", "Biography", "Art",
+        "Mathematics", "Philosophy", "Children", "Cooking", "Music", "Law", "Medicine", "Economics",
+        "Psychology", "Religion", "Sports", "Drama", "Fantasy", "Mystery", "Romance", "Horror",
+        "Politics", "Education", "Engineering", "Geography", "Languages", "Comics", "Nature", "Health",
+        "Business", "Design", "Film", "Photography", "Reference", "Self-Help", "Technology", "General"
+    };
+
+    // Adds books with ids 1..books and returns the created users ("user0".."userN")
+    public static User[] populate(Library library, int books, int users, long seed) {
+        Random r = new Random(seed);
+        int authors = Math.max(1, books / 20);
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < books; i++) {
+            sb.setLength(0);
+            int words = 2 + r.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) sb.append(' ');
+                String word = WORDS[r.nextInt(WORDS.length)];
+                sb.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            if (r.nextInt(4) == 0) sb.append(' ').append(1 + r.nextInt(12)); // volume numbers
+            int a = r.nextInt(authors);
+            String author = FIRST[a % FIRST.length] + " Author" + a;
+            library.addBook(sb.toString(), author, CATEGORIES[r.nextInt(CATEGORIES.length)]);
+        }
+        User[] created = new User[users];
+        for (int i = 0; i < users; i++) created[i] = library.addUser("user" + i, "pw" + i, "USER");
+        return created;
+    }
+}
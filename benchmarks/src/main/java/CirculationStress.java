@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Many desks on a small catalog shared by a few users: random single and batch borrows and returns
+// from many threads, so the same books and the same users are contended all the time. Fails (exit
+// code 1) if a book was lent twice or a user ever held more than User.BORROW_LIMIT books:
+//  - while running, a watcher samples every user's loan count
+//  - per book, successful borrows minus successful returns must be 1 when on loan and 0 when not
+//  - afterwards each loaned book must be held by its borrower, and by no other user, exactly once
+//
+//   java -cp benchmarks/target/benchmarks.jar CirculationStress [threads] [opsPerThread] [books] [users]
+public class CirculationStress {
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        final int books = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int userCount = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+
+        final Library library = new Library();
+        final User[] users = CatalogGenerator.populate(library, books, userCount, 42);
+        final int firstId = library.getBooks().iterator().next().getBookId();
+        final AtomicIntegerArray borrows = new AtomicIntegerArray(books);
+        final AtomicIntegerArray returns = new AtomicIntegerArray(books);
+        final AtomicLong applied = new AtomicLong();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final String[] overLimit = new String[1];
+
+        Thread watcher = new Thread(new Runnable() {
+            public void run() {
+                while (running.get()) {
+                    for (User u : users) {
+                        int n = u.borrowedCount();
+                        if (n > User.BORROW_LIMIT) overLimit[0] = u.getUsername() + " held " + n + " books";
+                    }
+                }
+            }
+        }, "stress-watcher");
+        watcher.start();
+
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    Random r = new Random(seed);
+                    try {
+                        for (int i = 0; i < ops; i++) {
+                            User u = users[r.nextInt(users.length)];
+                            int kind = r.nextInt(4);
+                            if (kind == 0) {
+                                int id = firstId + r.nextInt(books);
+                                if (library.borrowBook(u, id).startsWith("Borrowed")) count(borrows, id - firstId);
+                            } else if (kind == 1) {
+                                int[] ids = randomIds(r, 2 + r.nextInt(3));
+                                if (library.borrowBooks(u, ids).applied) for (int id : ids) count(borrows, id - firstId);
+                            } else {
+                                ArrayList<Integer> held;
+                                synchronized (u) { held = new ArrayList<Integer>(u.getBorrowedBookIds()); }
+                                if (held.isEmpty()) continue;
+                                if (kind == 2 || held.size() == 1) {
+                                    int id = held.get(r.nextInt(held.size()));
+                                    if (library.returnBook(u, id).startsWith("Returned")) count(returns, id - firstId);
+                                } else {
+                                    int[] ids = new int[held.size()];
+                                    for (int k = 0; k < ids.length; k++) ids[k] = held.get(k);
+                                    if (library.returnBooks(u, ids).applied) for (int id : ids) count(returns, id - firstId);
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+
+                private void count(AtomicIntegerArray a, int slot) {
+                    a.incrementAndGet(slot);
+                    applied.incrementAndGet();
+                }
+
+                private int[] randomIds(Random r, int n) {
+                    int[] ids = new int[n];
+                    for (int k = 0; k < n; k++) ids[k] = firstId + r.nextInt(books);
+                    return ids;
+                }
+            }, "stress-desk-" + t).start();
+        }
+        done.await();
+        running.set(false);
+        watcher.join();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        ArrayList<String> failures = new ArrayList<String>();
+        if (overLimit[0] != null) failures.add("over the borrow limit: " + overLimit[0]);
+        int onLoan = 0;
+        for (int slot = 0; slot < books; slot++) {
+            int id = firstId + slot;
+            Book b = library.getBookById(id);
+            int out = borrows.get(slot) - returns.get(slot);
+            int expected = b.isAvailable() ? 0 : 1;
+            if (out != expected) failures.add("book " + id + ": " + borrows.get(slot) + " borrows, " + returns.get(slot) + " returns, available=" + b.isAvailable());
+            int holders = 0;
+            for (User u : users) {
+                for (int held : u.getBorrowedBookIds()) {
+                    if (held != id) continue;
+                    holders++;
+                    if (b.isAvailable() || !u.getUsername().equals(b.getBorrowerUsername())) {
+                        failures.add("book " + id + " listed by " + u.getUsername() + " but lent to " + b.getBorrowerUsername());
+                    }
+                }
+            }
+            if (!b.isAvailable()) {
+                onLoan++;
+                if (holders != 1) failures.add("book " + id + " lent to " + b.getBorrowerUsername() + " is held by " + holders + " users");
+            }
+        }
+        for (User u : users) {
+            if (u.borrowedCount() > User.BORROW_LIMIT) failures.add(u.getUsername() + " ends with " + u.borrowedCount() + " books");
+        }
+        if (onLoan != library.totalBorrowed()) failures.add(onLoan + " books on loan but the counter says " + library.totalBorrowed());
+
+        System.out.printf("%d threads x %d ops on %d books / %d users: %d ms, %d loans and returns applied, %d on loan at the end%n",
+            threads, ops, books, users.length, millis, applied.get(), onLoan);
+        if (!failures.isEmpty()) {
+            for (String f : failures.subList(0, Math.min(20, failures.size()))) System.err.println("FAIL " + f);
+            System.err.println(failures.size() + " consistency failures");
+            System.exit(1);
+        }
+        System.out.println("OK: no book lent twice, no user over the limit of " + User.BORROW_LIMIT);
+    }
+}
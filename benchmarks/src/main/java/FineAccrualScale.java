@@ -0,0 +1,62 @@
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Time of a fine accrual run over a catalog where every book is out on loan (about a third of them
+// overdue), checked against a plain sequential sum, and the longest a catalog edit (write lock)
+// waited while the runs were going:
+//
+//   java -Xmx8g -cp benchmarks/target/benchmarks.jar FineAccrualScale [loans]
+public class FineAccrualScale {
+    public static void main(String[] args) throws InterruptedException {
+        int loans = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final Library library = new Library();
+        User[] users = CatalogGenerator.populate(library, loans, Math.max(1, loans / 5), 42);
+        int today = (int) LocalDate.now().toEpochDay();
+        Random r = new Random(7);
+        long expected = 0;
+        for (int id = 1; id <= loans; id++) {
+            int due = today - 60 + r.nextInt(90);
+            library.restoreBorrow(id, users[(id - 1) % users.length].getUsername(), due - 14, due);
+            if (due < today) expected += (today - due) * 10L;
+        }
+
+        final AtomicBoolean accruing = new AtomicBoolean(true);
+        final AtomicLong longestEdit = new AtomicLong();
+        Thread editor = new Thread(new Runnable() {
+            public void run() {
+                int n = 0;
+                while (accruing.get()) {
+                    long t0 = System.nanoTime();
+                    library.updateBook(1, "Edited " + (n++), "Author", "Category");
+                    long waited = System.nanoTime() - t0;
+                    if (waited > longestEdit.get()) longestEdit.set(waited);
+                    try { Thread.sleep(1); } catch (InterruptedException e) { return; }
+                }
+            }
+        }, "accrual-editor");
+        editor.start();
+        for (int round = 0; round < 5; round++) {
+            FineLedger ledger = library.accrueFines(LocalDate.now());
+            System.out.printf("accrual: %d ms, %d overdue loans, %d outstanding%n",
+                ledger.getElapsedMillis(), ledger.loans(), ledger.total());
+            if (ledger.total() != expected) throw new IllegalStateException("expected " + expected);
+        }
+        accruing.set(false);
+        editor.join();
+        System.out.printf("longest catalog edit during the runs: %.2f ms%n", longestEdit.get() / 1e6);
+
+        // returns take their fine off the ledger
+        FineLedger ledger = library.getFineLedger();
+        User u = users[0];
+        long before = ledger.balance(u.getUsername());
+        long fines = 0;
+        for (int id = 1; id <= loans; id += users.length) fines += ledger.fineFor(id);
+        for (int id = 1; id <= loans; id += users.length) library.returnBook(u, id);
+        if (ledger.balance(u.getUsername()) != 0 || ledger.total() != expected - before || before != fines) {
+            throw new IllegalStateException("returns not reflected in the ledger");
+        }
+        System.out.printf("%s returned %d books, %d in fines off the ledger%n", u.getUsername(), loans / users.length, before);
+    }
+}
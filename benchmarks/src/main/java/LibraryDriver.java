@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+
+// Default-package side of bench.LibraryOps; see the note there
+public class LibraryDriver implements bench.LibraryOps {
+    private Library library;
+    private User[] users;
+
+    public void generate(int books, int userCount, long seed) {
+        library = new Library();
+        users = CatalogGenerator.populate(library, books, userCount, seed);
+    }
+
+    public int search(String query, String searchBy, String category) {
+        return library.searchBooks(query, searchBy, category).size();
+    }
+
+    public boolean lookup(int bookId) { return library.getBookById(bookId) != null; }
+    public int categories() { return library.getAllCategories().size(); }
+    public int borrowedTotal() { return library.totalBorrowed(); }
+
+    public int borrow(int user, int bookId) {
+        return library.borrowBook(users[user], bookId).startsWith("Borrowed") ? 1 : 0;
+    }
+
+    public int returnOne(int user) {
+        User u = users[user];
+        ArrayList<Integer> held;
+        synchronized (u) {
+            if (u.borrowedCount() == 0) return 0;
+            held = new ArrayList<Integer>(u.getBorrowedBookIds());
+        }
+        return library.returnBook(u, held.get(0)).startsWith("Returned") ? 1 : 0;
+    }
+
+    public void checkpoint() { library.checkpoint(); }
+    public int load() { return Library.load().totalBooks(); }
+
+    public int maxBookId() { return library.totalBooks(); } // generated ids are 1..n with no gaps
+    public int userCount() { return users.length; }
+}
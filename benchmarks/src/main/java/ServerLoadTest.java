@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Closed-loop load test of LibraryServer on localhost: an in-process server over a generated catalog
+// (in memory, no persistence), hit by `clients` concurrent connections until `requests` have been made.
+// The mix is 80% searches, 10% book lookups and 10% borrow/return pairs. Prints p50/p90/p99/max.
+//
+//   java -cp benchmarks/target/benchmarks.jar ServerLoadTest [books] [clients] [requests]
+public class ServerLoadTest {
+    private static final String[] QUERIES = {"garden", "night", "river", "code", "java", "stone", "ocean", "star", "war", "mind"};
+
+    public static void main(String[] args) throws Exception {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        final int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        System.setProperty("http.maxConnections", String.valueOf(clients)); // keep-alive pool per host
+
+        Library library = new Library();
+        final int users = Math.max(1, clients);
+        CatalogGenerator.populate(library, books, users, 42);
+        LibraryServer server = new LibraryServer(library, 0);
+        server.start();
+        final String base = "http://127.0.0.1:" + server.getPort() + "/api/";
+        final int maxBook = books;
+
+        final long[] latencies = new long[requests];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    Random r = new Random(client);
+                    String auth = "Basic " + Base64.getEncoder().encodeToString(("user" + client % users + ":pw" + client % users).getBytes(StandardCharsets.UTF_8));
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        int kind = r.nextInt(10);
+                        long t0 = System.nanoTime();
+                        int status;
+                        try {
+                            if (kind < 8) {
+                                status = call("GET", base + "books?limit=20&q=" + URLEncoder.encode(QUERIES[r.nextInt(QUERIES.length)], "UTF-8"), null);
+                            } else if (kind == 8) {
+                                status = call("GET", base + "books/" + (1 + r.nextInt(maxBook)), null);
+                            } else {
+                                int id = 1 + r.nextInt(maxBook);
+                                status = call("POST", base + "books/" + id + "/borrow", auth);
+                                if (status == 200) call("POST", base + "books/" + id + "/return", auth);
+                                else if (status == 409) status = 200; // taken by another client: a valid answer
+                            }
+                        } catch (IOException e) {
+                            status = -1; // connection refused or reset; counted, the client carries on
+                        }
+                        latencies[i] = System.nanoTime() - t0;
+                        if (status != 200) errors.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            }, "load-" + c);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        server.stop();
+
+        int n = Math.min(next.get(), requests);
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        System.out.printf("%d requests, %d clients, %d books: %.0f req/s, %d errors%n", n, clients, books, n / seconds, errors.get());
+        System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+            pct(sorted, 0.50), pct(sorted, 0.90), pct(sorted, 0.99), sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    // Reads the whole body so the connection goes back to the keep-alive pool
+    private static int call(String method, String url, String auth) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod(method);
+        if (auth != null) con.setRequestProperty("Authorization", auth);
+        if (method.equals("POST")) {
+            con.setDoOutput(true);
+            con.setFixedLengthStreamingMode(0);
+            OutputStream out = con.getOutputStream();
+            out.close();
+        }
+        int status = con.getResponseCode();
+        InputStream in = status >= 400 ? con.getErrorStream() : con.getInputStream();
+        if (in != null) {
+            byte[] buf = new byte[8192];
+            while (in.read(buf) >= 0) { /* drain */ }
+            in.close();
+        }
+        return status;
+    }
+}
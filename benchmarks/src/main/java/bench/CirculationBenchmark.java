@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Mixed borrow/return traffic: each call borrows a random book for a random user or returns one
+// of that user's loans, so the catalog settles into a steady state of partly lent-out books
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CirculationBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int books;
+
+    @Param({"1000"})
+    public int users;
+
+    private LibraryOps lib;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lib = LibraryOps.create();
+        lib.generate(books, users, 42);
+    }
+
+    private int step() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int user = r.nextInt(users);
+        return r.nextBoolean() ? lib.borrow(user, 1 + r.nextInt(books)) : lib.returnOne(user);
+    }
+
+    @Benchmark
+    public int mixed() {
+        return step();
+    }
+
+    // Several desks at once; shows whether striped loan locks let throughput scale
+    @Benchmark
+    @Threads(4)
+    public int mixedFourDesks() {
+        return step();
+    }
+}
@@ -0,0 +1,32 @@
+package bench;
+
+// What the benchmarks drive. The application classes live in the default package, which code in a
+// named package (as JMH requires) cannot import, so LibraryDriver implements this from the default
+// package and the benchmarks load it once by name. Calls stay monomorphic interface calls.
+public interface LibraryOps {
+    // Fresh in-memory library filled by CatalogGenerator
+    void generate(int books, int users, long seed);
+
+    int search(String query, String searchBy, String category);
+    boolean lookup(int bookId);
+    int categories();
+    int borrowedTotal();
+
+    // Circulation: returns 1 when the operation went through, 0 when it was refused
+    int borrow(int user, int bookId);
+    int returnOne(int user);
+
+    void checkpoint();
+    int load();
+
+    int maxBookId();
+    int userCount();
+
+    static LibraryOps create() {
+        try {
+            return (LibraryOps) Class.forName("LibraryDriver").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("LibraryDriver missing from the benchmark jar", e);
+        }
+    }
+}
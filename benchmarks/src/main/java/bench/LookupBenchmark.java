@@ -0,0 +1,41 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Primary-key lookups and the dashboard queries refreshed after every table update
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int books;
+
+    private LibraryOps lib;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lib = LibraryOps.create();
+        lib.generate(books, 100, 42);
+    }
+
+    @Benchmark
+    public boolean getBookById() {
+        return lib.lookup(1 + ThreadLocalRandom.current().nextInt(books));
+    }
+
+    @Benchmark
+    public int getAllCategories() {
+        return lib.categories();
+    }
+
+    @Benchmark
+    public int totalBorrowed() {
+        return lib.borrowedTotal();
+    }
+}
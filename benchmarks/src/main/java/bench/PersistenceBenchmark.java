@@ -0,0 +1,41 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// Full snapshot write (checkpoint) and cold load. Runs with the journal off so load() measures
+// just the snapshot, in a scratch directory under the working directory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dlibrary.journal=false", "-Dlibrary.dir=bench-data"})
+public class PersistenceBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int books;
+
+    private LibraryOps lib;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Files.createDirectories(Paths.get(System.getProperty("library.dir")));
+        lib = LibraryOps.create();
+        lib.generate(books, 100, 42);
+        lib.checkpoint(); // something for load() to read
+    }
+
+    @Benchmark
+    public void save() {
+        lib.checkpoint();
+    }
+
+    @Benchmark
+    public int load() {
+        return lib.load();
+    }
+}
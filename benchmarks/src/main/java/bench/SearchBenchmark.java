@@ -0,0 +1,40 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Library.searchBooks for every search mode, with and without a category filter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int books;
+
+    @Param({"All", "Title", "Author", "Category", "ID"})
+    public String searchBy;
+
+    // one letter (scan path), a trigram-indexed word, and a miss
+    @Param({"e", "garden", "zzyzx"})
+    public String query;
+
+    @Param({"All", "History"})
+    public String category;
+
+    private LibraryOps lib;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lib = LibraryOps.create();
+        lib.generate(books, 100, 42);
+    }
+
+    @Benchmark
+    public int search() {
+        return lib.search(query, searchBy, category);
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+// Offline summary of a recording made with jfr/library.jfc (Java 11+):
+//
+//   java -cp target/classes JfrAnalyzer recording.jfr [slowest]
+//
+// Prints per-operation counts and latency percentiles for the library.* events, GC pause totals, and
+// for the slowest library operations how much of each overlapped a GC pause, or was spent on that
+// same thread parked, blocked on a monitor, or in file I/O. That answers "was it GC, the save, or a
+// slow search" without opening Mission Control.
+public class JfrAnalyzer {
+    private static final String[] WAIT_EVENTS = {"jdk.ThreadPark", "jdk.JavaMonitorEnter", "jdk.JavaMonitorWait"};
+    private static final String[] IO_EVENTS = {"jdk.FileWrite", "jdk.FileRead", "jdk.FileForce"};
+
+    private static final class Interval {
+        final Instant start, end;
+        final long thread; // Java thread id, -1 when not thread-bound
+        final String label;
+        final Duration duration;
+
+        Interval(RecordedEvent e, String label) {
+            this.start = e.getStartTime();
+            this.end = e.getEndTime();
+            this.duration = e.getDuration();
+            RecordedThread t = e.getThread();
+            this.thread = t == null ? -1 : t.getJavaThreadId();
+            this.label = label;
+        }
+
+        long overlapNanos(Interval o) {
+            Instant s = start.isAfter(o.start) ? start : o.start;
+            Instant f = end.isBefore(o.end) ? end : o.end;
+            return f.isAfter(s) ? Duration.between(s, f).toNanos() : 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: JfrAnalyzer <recording.jfr> [slowest]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        int slowest = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<Interval> ops = new ArrayList<Interval>();
+        List<Interval> gcPauses = new ArrayList<Interval>();
+        List<Interval> waits = new ArrayList<Interval>();
+        List<Interval> io = new ArrayList<Interval>();
+        Map<String, long[]> searchHits = new TreeMap<String, long[]>(); // mode -> {searches, hits}
+        Map<String, Long> bytesWritten = new TreeMap<String, Long>();
+        Instant first = null, last = null;
+        long events = 0;
+
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+            events++;
+            if (first == null || e.getStartTime().isBefore(first)) first = e.getStartTime();
+            if (last == null || e.getEndTime().isAfter(last)) last = e.getEndTime();
+            String type = e.getEventType().getName();
+            switch (type) {
+                case "library.Mutation":
+                    ops.add(new Interval(e, "mutation " + e.getString("operation") + (e.getBoolean("applied") ? "" : " (refused)")));
+                    break;
+                case "library.Search": {
+                    String mode = String.valueOf(e.getString("mode"));
+                    ops.add(new Interval(e, "search " + mode));
+                    long[] h = searchHits.get(mode);
+                    if (h == null) searchHits.put(mode, h = new long[2]);
+                    h[0]++;
+                    h[1] += e.getInt("hits");
+                    break;
+                }
+                case "library.PersistenceWrite": {
+                    String kind = e.getString("kind");
+                    ops.add(new Interval(e, "write " + kind));
+                    Long before = bytesWritten.get(kind);
+                    bytesWritten.put(kind, (before == null ? 0 : before) + e.getLong("bytes"));
+                    break;
+                }
+                case "library.TableRefresh":
+                    ops.add(new Interval(e, "table refresh" + (e.getBoolean("superseded") ? " (superseded)" : "")));
+                    break;
+                case "jdk.GCPhasePause":
+                    gcPauses.add(new Interval(e, "gc pause"));
+                    break;
+                default:
+                    if (contains(WAIT_EVENTS, type)) waits.add(new Interval(e, type));
+                    else if (contains(IO_EVENTS, type)) io.add(new Interval(e, type));
+            }
+        }
+
+        System.out.printf("%s: %d events over %.1f s%n", file.getFileName(), events,
+            first == null ? 0.0 : Duration.between(first, last).toMillis() / 1000.0);
+        printOperations(ops);
+        printSearches(searchHits);
+        printWrites(bytesWritten);
+        printGc(gcPauses);
+        printSlowest(ops, gcPauses, waits, io, slowest);
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) if (n.equals(name)) return true;
+        return false;
+    }
+
+    private static void printOperations(List<Interval> ops) {
+        Map<String, List<Long>> byLabel = new TreeMap<String, List<Long>>();
+        for (Interval op : ops) {
+            List<Long> d = byLabel.get(op.label);
+            if (d == null) byLabel.put(op.label, d = new ArrayList<Long>());
+            d.add(op.duration.toNanos());
+        }
+        System.out.println();
+        System.out.printf("%-32s %8s %10s %10s %10s %10s%n", "Library operation", "count", "p50 ms", "p99 ms", "max ms", "total ms");
+        if (byLabel.isEmpty()) System.out.println("  (no library.* events; record with -XX:StartFlightRecording:settings=jfr/library.jfc)");
+        for (Map.Entry<String, List<Long>> en : byLabel.entrySet()) {
+            List<Long> d = en.getValue();
+            Collections.sort(d);
+            long total = 0;
+            for (long v : d) total += v;
+            System.out.printf("%-32s %8d %10.3f %10.3f %10.3f %10.1f%n", en.getKey(), d.size(),
+                pct(d, 0.50) / 1e6, pct(d, 0.99) / 1e6, d.get(d.size() - 1) / 1e6, total / 1e6);
+        }
+    }
+
+    private static void printSearches(Map<String, long[]> searchHits) {
+        if (searchHits.isEmpty()) return;
+        System.out.println();
+        for (Map.Entry<String, long[]> en : searchHits.entrySet()) {
+            long[] h = en.getValue();
+            System.out.printf("search %-10s %8d searches, %.1f hits on average%n", en.getKey(), h[0], h[1] / (double) h[0]);
+        }
+    }
+
+    private static void printWrites(Map<String, Long> bytesWritten) {
+        for (Map.Entry<String, Long> en : bytesWritten.entrySet()) {
+            System.out.printf("write %-11s %10.2f MB in total%n", en.getKey(), en.getValue() / 1e6);
+        }
+    }
+
+    private static void printGc(List<Interval> gcPauses) {
+        long total = 0, longest = 0;
+        for (Interval p : gcPauses) {
+            total += p.duration.toNanos();
+            longest = Math.max(longest, p.duration.toNanos());
+        }
+        System.out.println();
+        System.out.printf("GC pauses: %d, %.1f ms in total, longest %.3f ms%n", gcPauses.size(), total / 1e6, longest / 1e6);
+    }
+
+    // Where the time of each slow operation went, as far as the recording can tell
+    private static void printSlowest(List<Interval> ops, List<Interval> gcPauses, List<Interval> waits, List<Interval> io, int n) {
+        if (ops.isEmpty() || n <= 0) return;
+        List<Interval> sorted = new ArrayList<Interval>(ops);
+        Collections.sort(sorted, new Comparator<Interval>() {
+            public int compare(Interval a, Interval b) { return b.duration.compareTo(a.duration); }
+        });
+        System.out.println();
+        System.out.printf("%-32s %10s %10s %10s %10s  %s%n", "Slowest operations", "ms", "gc ms", "wait ms", "io ms", "likely cause");
+        for (Interval op : sorted.subList(0, Math.min(n, sorted.size()))) {
+            long gc = 0, wait = 0, file = 0;
+            for (Interval p : gcPauses) gc += op.overlapNanos(p);
+            for (Interval w : waits) if (w.thread == op.thread) wait += op.overlapNanos(w);
+            for (Interval f : io) if (f.thread == op.thread) file += op.overlapNanos(f);
+            long own = op.duration.toNanos();
+            String cause;
+            if (gc >= own / 2) cause = "GC";
+            else if (wait >= own / 2) cause = "lock / park wait";
+            else if (file >= own / 2) cause = "file I/O";
+            else cause = "the operation itself";
+            System.out.printf("%-32s %10.3f %10.3f %10.3f %10.3f  %s%n", op.label, own / 1e6, gc / 1e6, wait / 1e6, file / 1e6, cause);
+        }
+    }
+
+    private static long pct(List<Long> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, Math.max(0, (int) Math.ceil(p * sorted.size()) - 1)));
+    }
+}
@@ -0,0 +1,134 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder side of LibraryEvents (Java 11+, loaded reflectively). Each begin checks whether a
+// running recording has the event enabled and returns null otherwise, so nothing is allocated
+// outside a recording. Event names are what jfr/library.jfc and JfrAnalyzer refer to.
+public class LibraryJfrRecorder implements LibraryEvents.Recorder {
+    @Name("library.Mutation")
+    @Label("Library Mutation")
+    @Category({"Library", "Operations"})
+    @Description("A catalog, user or loan change through Library")
+    @StackTrace(false)
+    static class MutationEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Book Id") @Description("The book, or the first book of a batch; 0 when not about one book") int bookId;
+        @Label("Count") @Description("Books (or users) in the operation") int count;
+        @Label("Applied") @Description("False when the operation was refused") boolean applied;
+    }
+
+    @Name("library.Search")
+    @Label("Library Search")
+    @Category({"Library", "Operations"})
+    @StackTrace(false)
+    static class SearchEvent extends Event {
+        @Label("Mode") @Description("Search by: All, Title, Author, Category or ID") String mode;
+        @Label("Category Filter") String categoryFilter;
+        @Label("Query Length") int queryLength;
+        @Label("From Id") @Description("First id considered; above 1 for a continuation page") int fromId;
+        @Label("Hits") int hits;
+    }
+
+    @Name("library.PersistenceWrite")
+    @Label("Library Persistence Write")
+    @Category({"Library", "Persistence"})
+    @StackTrace(false)
+    static class PersistenceEvent extends Event {
+        @Label("Kind") @Description("snapshot or journalSync") String kind;
+        @Label("Bytes") @DataAmount long bytes;
+    }
+
+    @Name("library.TableRefresh")
+    @Label("Library Table Refresh")
+    @Category({"Library", "GUI"})
+    @Description("From requesting a page of results to the rows being in the table")
+    @StackTrace(false)
+    static class TableRefreshEvent extends Event {
+        @Label("Query Length") int queryLength;
+        @Label("Rows") int rows;
+        @Label("First Page") boolean firstPage;
+        @Label("Superseded") @Description("A newer search replaced it before it was shown") boolean superseded;
+    }
+
+    private static final EventType MUTATION = EventType.getEventType(MutationEvent.class);
+    private static final EventType SEARCH = EventType.getEventType(SearchEvent.class);
+    private static final EventType PERSISTENCE = EventType.getEventType(PersistenceEvent.class);
+    private static final EventType TABLE_REFRESH = EventType.getEventType(TableRefreshEvent.class);
+
+    public Object beginMutation() {
+        if (!MUTATION.isEnabled()) return null;
+        MutationEvent e = new MutationEvent();
+        e.begin();
+        return e;
+    }
+
+    public void endMutation(Object event, String operation, int bookId, int count, boolean applied) {
+        MutationEvent e = (MutationEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.operation = operation;
+        e.bookId = bookId;
+        e.count = count;
+        e.applied = applied;
+        e.commit();
+    }
+
+    public Object beginSearch() {
+        if (!SEARCH.isEnabled()) return null;
+        SearchEvent e = new SearchEvent();
+        e.begin();
+        return e;
+    }
+
+    public void endSearch(Object event, String searchBy, String categoryFilter, int queryLength, int fromId, int hits) {
+        SearchEvent e = (SearchEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.mode = searchBy;
+        e.categoryFilter = categoryFilter;
+        e.queryLength = queryLength;
+        e.fromId = fromId;
+        e.hits = hits;
+        e.commit();
+    }
+
+    public Object beginPersistence() {
+        if (!PERSISTENCE.isEnabled()) return null;
+        PersistenceEvent e = new PersistenceEvent();
+        e.begin();
+        return e;
+    }
+
+    public void endPersistence(Object event, String kind, long bytes) {
+        PersistenceEvent e = (PersistenceEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.kind = kind;
+        e.bytes = bytes;
+        e.commit();
+    }
+
+    public Object beginTableRefresh() {
+        if (!TABLE_REFRESH.isEnabled()) return null;
+        TableRefreshEvent e = new TableRefreshEvent();
+        e.begin();
+        return e;
+    }
+
+    public void endTableRefresh(Object event, int queryLength, int rows, boolean firstPage, boolean superseded) {
+        TableRefreshEvent e = (TableRefreshEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.queryLength = queryLength;
+        e.rows = rows;
+        e.firstPage = firstPage;
+        e.superseded = superseded;
+        e.commit();
+    }
+}